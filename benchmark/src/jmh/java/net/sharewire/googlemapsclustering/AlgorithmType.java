@@ -0,0 +1,35 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Types of the clustering algorithm as they're created by the cluster manager.
+ */
+public enum AlgorithmType {
+
+    GRID {
+        @NonNull
+        @Override
+        <T extends ClusterItem> ClusteringAlgorithm<T> create(@Nullable ClusterHierarchy<T> clusterHierarchy,
+                                                              @NonNull ClusterCache<T> clusterCache) {
+            return new GridClusteringAlgorithm<>(clusterHierarchy, clusterCache);
+        }
+    },
+
+    DISTANCE {
+        @NonNull
+        @Override
+        <T extends ClusterItem> ClusteringAlgorithm<T> create(@Nullable ClusterHierarchy<T> clusterHierarchy,
+                                                              @NonNull ClusterCache<T> clusterCache) {
+            return new DistanceClusteringAlgorithm<>();
+        }
+    };
+
+    /**
+     * @param clusterHierarchy the precomputed clusters, used only by the algorithms that support them
+     */
+    @NonNull
+    abstract <T extends ClusterItem> ClusteringAlgorithm<T> create(@Nullable ClusterHierarchy<T> clusterHierarchy,
+                                                                   @NonNull ClusterCache<T> clusterCache);
+}
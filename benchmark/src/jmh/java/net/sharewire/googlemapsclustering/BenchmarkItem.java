@@ -0,0 +1,36 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.Nullable;
+
+class BenchmarkItem implements ClusterItem {
+
+    private final double latitude;
+    private final double longitude;
+
+    BenchmarkItem(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    @Override
+    public double getLatitude() {
+        return latitude;
+    }
+
+    @Override
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Nullable
+    @Override
+    public String getTitle() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getSnippet() {
+        return null;
+    }
+}
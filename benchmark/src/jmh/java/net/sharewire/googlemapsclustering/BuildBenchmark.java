@@ -0,0 +1,83 @@
+package net.sharewire.googlemapsclustering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the structures that are built when items are set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BuildBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int itemCount;
+
+    @Param({"UNIFORM", "HOTSPOTS", "CITIES"})
+    public ItemDistribution distribution;
+
+    private List<BenchmarkItem> items;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() {
+        items = distribution.createItems(itemCount);
+        latitudes = new double[itemCount];
+        longitudes = new double[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            latitudes[i] = items.get(i).getLatitude();
+            longitudes[i] = items.get(i).getLongitude();
+        }
+    }
+
+    @Benchmark
+    public SpatialIndex<BenchmarkItem> buildQuadTree() {
+        SpatialIndex<BenchmarkItem> spatialIndex = IndexType.QUAD_TREE.create();
+        spatialIndex.insertAll(items);
+        return spatialIndex;
+    }
+
+    @Benchmark
+    public SpatialIndex<BenchmarkItem> buildKdTree() {
+        SpatialIndex<BenchmarkItem> spatialIndex = IndexType.KD_TREE.create();
+        spatialIndex.insertAll(items);
+        // The k-d tree is built lazily by the first query.
+        spatialIndex.queryRange(0.0, 0.0, 0.0, 0.0);
+        return spatialIndex;
+    }
+
+    @Benchmark
+    public SpatialIndex<BenchmarkItem> buildMortonIndex() {
+        SpatialIndex<BenchmarkItem> spatialIndex = IndexType.MORTON.create();
+        spatialIndex.insertAll(items);
+        // The index is built lazily by the first query.
+        spatialIndex.queryRange(0.0, 0.0, 0.0, 0.0);
+        return spatialIndex;
+    }
+
+    @Benchmark
+    public SpatialIndex<BenchmarkItem> buildMortonIndexFromCoordinates() {
+        SpatialIndex<BenchmarkItem> spatialIndex = IndexType.MORTON.create();
+        spatialIndex.insertAll(items, latitudes, longitudes);
+        spatialIndex.queryRange(0.0, 0.0, 0.0, 0.0);
+        return spatialIndex;
+    }
+
+    @Benchmark
+    public ClusterHierarchy<BenchmarkItem> buildClusterHierarchy() {
+        return new ClusterHierarchy<>(items);
+    }
+}
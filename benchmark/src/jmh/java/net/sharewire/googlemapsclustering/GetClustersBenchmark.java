@@ -0,0 +1,74 @@
+package net.sharewire.googlemapsclustering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures clustering of the visible region of a phone screen from scratch,
+ * as it happens when the camera stops after zooming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetClustersBenchmark {
+
+    private static final int SCREEN_COUNT = 256;
+    private static final int MIN_CLUSTER_SIZE = 1;
+    private static final int MAX_MARKER_COUNT = Integer.MAX_VALUE;
+    private static final int THREAD_COUNT = 1;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int itemCount;
+
+    @Param({"UNIFORM", "HOTSPOTS", "CITIES"})
+    public ItemDistribution distribution;
+
+    @Param({"QUAD_TREE", "KD_TREE", "MORTON"})
+    public IndexType indexType;
+
+    @Param({"GRID", "DISTANCE"})
+    public AlgorithmType algorithm;
+
+    @Param({"2", "6", "10", "14", "18"})
+    public float zoomLevel;
+
+    @Param({"false", "true"})
+    public boolean clusterHierarchyEnabled;
+
+    private SpatialIndex<BenchmarkItem> spatialIndex;
+
+    private ClusterHierarchy<BenchmarkItem> clusterHierarchy;
+
+    private Viewport[] screens;
+
+    private int screenIndex;
+
+    @Setup
+    public void setUp() {
+        List<BenchmarkItem> items = distribution.createItems(itemCount);
+        spatialIndex = indexType.create();
+        spatialIndex.insertAll(items);
+        clusterHierarchy = clusterHierarchyEnabled ? new ClusterHierarchy<>(items) : null;
+        screens = Viewport.createScreens(items, zoomLevel, SCREEN_COUNT);
+    }
+
+    @Benchmark
+    public List<Cluster<BenchmarkItem>> getClusters() {
+        // A new engine doesn't reuse the clusters of the previous screen.
+        ClusterEngine<BenchmarkItem> clusterEngine = new ClusterEngine<>(spatialIndex);
+        clusterEngine.setItems(spatialIndex, algorithm.create(clusterHierarchy, clusterEngine.getClusterCache()));
+
+        Viewport screen = screens[screenIndex++ % SCREEN_COUNT];
+        return clusterEngine.getClusters(screen.north, screen.west, screen.south, screen.east,
+                zoomLevel, MIN_CLUSTER_SIZE, MAX_MARKER_COUNT, THREAD_COUNT);
+    }
+}
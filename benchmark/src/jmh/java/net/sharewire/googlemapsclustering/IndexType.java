@@ -0,0 +1,36 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Types of the spatial index with the parameters used by the cluster manager.
+ */
+public enum IndexType {
+
+    QUAD_TREE {
+        @NonNull
+        @Override
+        <T extends ClusterItem> SpatialIndex<T> create() {
+            return new QuadTree<>(ClusterEngine.QUAD_TREE_BUCKET_CAPACITY);
+        }
+    },
+
+    KD_TREE {
+        @NonNull
+        @Override
+        <T extends ClusterItem> SpatialIndex<T> create() {
+            return new KdTree<>(ClusterEngine.KD_TREE_NODE_SIZE);
+        }
+    },
+
+    MORTON {
+        @NonNull
+        @Override
+        <T extends ClusterItem> SpatialIndex<T> create() {
+            return new MortonIndex<>(ClusterEngine.MORTON_INDEX_LEAF_SIZE);
+        }
+    };
+
+    @NonNull
+    abstract <T extends ClusterItem> SpatialIndex<T> create();
+}
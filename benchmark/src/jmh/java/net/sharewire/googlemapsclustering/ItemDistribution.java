@@ -0,0 +1,127 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Distributions of the items used in the benchmarks. Items are generated
+ * with a fixed seed, so every run uses the same items.
+ */
+public enum ItemDistribution {
+
+    /**
+     * Items spread evenly over the map.
+     */
+    UNIFORM {
+        @NonNull
+        @Override
+        BenchmarkItem createItem(@NonNull Random random) {
+            return new BenchmarkItem(uniform(random, -MAX_LATITUDE, MAX_LATITUDE), uniform(random, -180.0, 180.0));
+        }
+    },
+
+    /**
+     * Items concentrated around a few random points with a normal distribution.
+     */
+    HOTSPOTS {
+        private static final int HOTSPOT_COUNT = 16;
+
+        private final double[][] hotspots = new double[HOTSPOT_COUNT][];
+
+        {
+            Random random = new Random(SEED);
+            for (int i = 0; i < HOTSPOT_COUNT; i++) {
+                hotspots[i] = new double[]{
+                        uniform(random, -60.0, 60.0),
+                        uniform(random, -180.0, 180.0),
+                        uniform(random, 0.5, 5.0)};
+            }
+        }
+
+        @NonNull
+        @Override
+        BenchmarkItem createItem(@NonNull Random random) {
+            double[] hotspot = hotspots[random.nextInt(HOTSPOT_COUNT)];
+            return gaussian(random, hotspot[0], hotspot[1], hotspot[2]);
+        }
+    },
+
+    /**
+     * Items clustered in cities, whose sizes follow Zipf's law, with a few items in between.
+     * Resembles real-world data sets, such as points of interest.
+     */
+    CITIES {
+        private final double[][] cities = {
+                {35.69, 139.69}, {28.61, 77.21}, {31.23, 121.47}, {-23.55, -46.63},
+                {19.43, -99.13}, {30.04, 31.24}, {19.08, 72.88}, {39.90, 116.41},
+                {40.71, -74.01}, {34.69, 135.50}, {-34.60, -58.38}, {41.01, 28.98},
+                {6.52, 3.38}, {55.76, 37.62}, {51.51, -0.13}, {48.86, 2.35},
+                {34.05, -118.24}, {-33.87, 151.21}, {1.35, 103.82}, {52.37, 4.90}};
+
+        private final double[] cumulativeWeights = new double[cities.length];
+
+        {
+            double totalWeight = 0.0;
+            for (int i = 0; i < cities.length; i++) {
+                totalWeight += 1.0 / (i + 1);
+                cumulativeWeights[i] = totalWeight;
+            }
+            for (int i = 0; i < cities.length; i++) {
+                cumulativeWeights[i] /= totalWeight;
+            }
+        }
+
+        @NonNull
+        @Override
+        BenchmarkItem createItem(@NonNull Random random) {
+            if (random.nextDouble() < BACKGROUND_RATIO) {
+                return UNIFORM.createItem(random);
+            }
+
+            double weight = random.nextDouble();
+            int city = 0;
+            while (city < cities.length - 1 && cumulativeWeights[city] < weight) {
+                city++;
+            }
+
+            // Most items are in the city center, but some are in the suburbs.
+            double deviation = 0.02 * Math.exp(random.nextGaussian());
+            return gaussian(random, cities[city][0], cities[city][1], deviation);
+        }
+    };
+
+    static final long SEED = 42;
+
+    private static final double MAX_LATITUDE = 85.0;
+
+    private static final double BACKGROUND_RATIO = 0.05;
+
+    @NonNull
+    abstract BenchmarkItem createItem(@NonNull Random random);
+
+    @NonNull
+    List<BenchmarkItem> createItems(int count) {
+        Random random = new Random(SEED);
+        List<BenchmarkItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(createItem(random));
+        }
+        return items;
+    }
+
+    private static double uniform(@NonNull Random random, double min, double max) {
+        return min + random.nextDouble() * (max - min);
+    }
+
+    @NonNull
+    private static BenchmarkItem gaussian(@NonNull Random random, double latitude, double longitude,
+                                          double deviation) {
+        latitude += random.nextGaussian() * deviation;
+        longitude += random.nextGaussian() * deviation;
+        return new BenchmarkItem(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)),
+                Math.max(-180.0, Math.min(180.0, longitude)));
+    }
+}
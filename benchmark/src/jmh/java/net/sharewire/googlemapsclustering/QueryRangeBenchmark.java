@@ -0,0 +1,57 @@
+package net.sharewire.googlemapsclustering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures range queries of the spatial index. Queries cover a fixed fraction of the map,
+ * so the amount of returned items depends on the distribution of the items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryRangeBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int itemCount;
+
+    @Param({"UNIFORM", "HOTSPOTS", "CITIES"})
+    public ItemDistribution distribution;
+
+    @Param({"QUAD_TREE", "KD_TREE", "MORTON"})
+    public IndexType indexType;
+
+    @Param({"0.000001", "0.0001", "0.01", "1"})
+    public double areaFraction;
+
+    private SpatialIndex<BenchmarkItem> spatialIndex;
+
+    private Viewport[] queries;
+
+    private int queryIndex;
+
+    @Setup
+    public void setUp() {
+        List<BenchmarkItem> items = distribution.createItems(itemCount);
+        spatialIndex = indexType.create();
+        spatialIndex.insertAll(items);
+        queries = Viewport.createQueries(items, areaFraction, QUERY_COUNT);
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> queryRange() {
+        Viewport query = queries[queryIndex++ % QUERY_COUNT];
+        return spatialIndex.queryRange(query.north, query.west, query.south, query.east);
+    }
+}
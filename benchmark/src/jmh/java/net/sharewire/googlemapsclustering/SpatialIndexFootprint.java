@@ -0,0 +1,53 @@
+package net.sharewire.googlemapsclustering;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prints the heap taken by each type of the spatial index and by the cluster hierarchy,
+ * excluding the items themselves. Run with <code>./gradlew :benchmark:footprint</code>.
+ */
+public class SpatialIndexFootprint {
+
+    private static final int[] ITEM_COUNTS = {1000, 10000, 100000, 1000000};
+
+    public static void main(String[] args) {
+        System.out.println("distribution,items,structure,bytes,bytesPerItem");
+
+        for (ItemDistribution distribution : ItemDistribution.values()) {
+            for (int itemCount : ITEM_COUNTS) {
+                List<BenchmarkItem> items = distribution.createItems(itemCount);
+
+                for (IndexType indexType : IndexType.values()) {
+                    long heapBefore = getUsedHeap();
+                    SpatialIndex<BenchmarkItem> spatialIndex = indexType.create();
+                    spatialIndex.insertAll(items);
+                    spatialIndex.queryRange(0.0, 0.0, 0.0, 0.0);
+                    print(distribution, itemCount, indexType.name(), getUsedHeap() - heapBefore);
+                    spatialIndex.clear();
+                }
+
+                long heapBefore = getUsedHeap();
+                ClusterHierarchy<BenchmarkItem> clusterHierarchy = new ClusterHierarchy<>(items);
+                print(distribution, itemCount, "CLUSTER_HIERARCHY", getUsedHeap() - heapBefore);
+                clusterHierarchy.hasZoomLevel(0);
+            }
+        }
+    }
+
+    private static void print(ItemDistribution distribution, int itemCount, String structure, long bytes) {
+        System.out.println(String.format(Locale.US, "%s,%d,%s,%d,%.1f",
+                distribution, itemCount, structure, bytes, (double) bytes / itemCount));
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = Long.MAX_VALUE;
+        // Garbage collection isn't guaranteed to complete on the first request.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            usedHeap = Math.min(usedHeap, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return usedHeap;
+    }
+}
@@ -0,0 +1,72 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A region of the map used as the visible region or as a range query in the benchmarks.
+ */
+class Viewport {
+
+    // The size of the map view of a typical phone in dp.
+    private static final double SCREEN_WIDTH = 411.0;
+    private static final double SCREEN_HEIGHT = 731.0;
+
+    // The size of a map tile in dp, at the zoom level 0 the map is one tile wide.
+    private static final double TILE_SIZE = 256.0;
+
+    final double north;
+    final double west;
+    final double south;
+    final double east;
+
+    private Viewport(double latitude, double longitude, double height, double width) {
+        north = Math.min(90.0, latitude + height / 2);
+        south = Math.max(-90.0, latitude - height / 2);
+        west = Math.max(-180.0, longitude - width / 2);
+        east = Math.min(180.0, longitude + width / 2);
+    }
+
+    /**
+     * Creates the visible regions of the screen at the given zoom level centered at random items,
+     * so that the regions contain items regardless of their distribution.
+     */
+    @NonNull
+    static Viewport[] createScreens(@NonNull List<BenchmarkItem> items, float zoomLevel, int count) {
+        double width = Math.min(360.0, 360.0 * SCREEN_WIDTH / (TILE_SIZE * Math.pow(2, zoomLevel)));
+
+        Random random = new Random(ItemDistribution.SEED);
+        Viewport[] viewports = new Viewport[count];
+        for (int i = 0; i < count; i++) {
+            BenchmarkItem item = items.get(random.nextInt(items.size()));
+            // The map is drawn in the Web Mercator projection, so away from the equator
+            // the screen covers fewer degrees of latitude.
+            double height = Math.min(180.0, width * SCREEN_HEIGHT / SCREEN_WIDTH
+                    * Math.cos(Math.toRadians(item.getLatitude())));
+            viewports[i] = new Viewport(item.getLatitude(), item.getLongitude(), height, width);
+        }
+        return viewports;
+    }
+
+    /**
+     * Creates regions that cover the given fraction of the map centered at random items.
+     */
+    @NonNull
+    static Viewport[] createQueries(@NonNull List<BenchmarkItem> items, double areaFraction, int count) {
+        double scale = Math.sqrt(areaFraction);
+        return create(items, 180.0 * scale, 360.0 * scale, count);
+    }
+
+    @NonNull
+    private static Viewport[] create(@NonNull List<BenchmarkItem> items, double height, double width, int count) {
+        Random random = new Random(ItemDistribution.SEED);
+        Viewport[] viewports = new Viewport[count];
+        for (int i = 0; i < count; i++) {
+            BenchmarkItem item = items.get(random.nextInt(items.size()));
+            viewports[i] = new Viewport(item.getLatitude(), item.getLongitude(), height, width);
+        }
+        return viewports;
+    }
+}
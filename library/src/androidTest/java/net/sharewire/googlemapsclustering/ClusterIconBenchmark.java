@@ -0,0 +1,133 @@
+package net.sharewire.googlemapsclustering;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.GradientDrawable;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Compares the time of creating a cluster icon by drawing it on a canvas with
+ * creating, laying out and drawing a square text view, as the icons have been created before.
+ * Run with <code>./gradlew :library:connectedAndroidTest</code> and see the results in logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClusterIconBenchmark {
+
+    private static final String TAG = "ClusterIconBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 100;
+
+    private static final int ITERATIONS = 1000;
+
+    private static final String[] ICON_TEXTS = {"1", "10+", "100+", "1000+", "20000+"};
+
+    @Test
+    public void createClusterIcons() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final IconStyle iconStyle = new IconStyle.Builder(context).build();
+        final ClusterIconPainter clusterIconPainter = new ClusterIconPainter(context);
+
+        long viewNanos = measure(new IconFactory() {
+            @NonNull
+            @Override
+            public Bitmap createIcon(@NonNull String text) {
+                return drawClusterIconView(context, iconStyle, text);
+            }
+        });
+
+        long drawNanos = measure(new IconFactory() {
+            @NonNull
+            @Override
+            public Bitmap createIcon(@NonNull String text) {
+                return clusterIconPainter.draw(iconStyle, text);
+            }
+        });
+
+        Log.i(TAG, String.format(Locale.US, "view: %d us/icon, draw: %d us/icon",
+                viewNanos / 1000, drawNanos / 1000));
+    }
+
+    private static long measure(@NonNull IconFactory iconFactory) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iconFactory.createIcon(ICON_TEXTS[i % ICON_TEXTS.length]).recycle();
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            iconFactory.createIcon(ICON_TEXTS[i % ICON_TEXTS.length]).recycle();
+        }
+        return (System.nanoTime() - startTime) / ITERATIONS;
+    }
+
+    @NonNull
+    private static Bitmap drawClusterIconView(@NonNull Context context, @NonNull IconStyle iconStyle,
+                                              @NonNull String text) {
+        Resources resources = context.getResources();
+        int minSize = resources.getDimensionPixelSize(R.dimen.cluster_icon_min_size);
+        int padding = resources.getDimensionPixelSize(R.dimen.cluster_icon_padding);
+
+        TextView clusterIconView = new SquareTextView(context);
+        clusterIconView.setGravity(Gravity.CENTER);
+        clusterIconView.setIncludeFontPadding(false);
+        clusterIconView.setMinWidth(minSize);
+        clusterIconView.setMinHeight(minSize);
+        clusterIconView.setPadding(padding, padding, padding, padding);
+
+        GradientDrawable background = new GradientDrawable();
+        background.setShape(GradientDrawable.OVAL);
+        background.setColor(iconStyle.getClusterBackgroundColor());
+        background.setStroke(iconStyle.getClusterStrokeWidth(), iconStyle.getClusterStrokeColor());
+
+        clusterIconView.setBackground(background);
+        clusterIconView.setTextColor(iconStyle.getClusterTextColor());
+        clusterIconView.setTextSize(TypedValue.COMPLEX_UNIT_PX, iconStyle.getClusterTextSize());
+        clusterIconView.setText(text);
+
+        clusterIconView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+        clusterIconView.layout(0, 0, clusterIconView.getMeasuredWidth(),
+                clusterIconView.getMeasuredHeight());
+
+        Bitmap iconBitmap = Bitmap.createBitmap(clusterIconView.getMeasuredWidth(),
+                clusterIconView.getMeasuredHeight(), Bitmap.Config.ARGB_8888);
+        clusterIconView.draw(new Canvas(iconBitmap));
+        return iconBitmap;
+    }
+
+    private interface IconFactory {
+
+        @NonNull
+        Bitmap createIcon(@NonNull String text);
+    }
+
+    /**
+     * A text view as high as it's wide.
+     */
+    private static class SquareTextView extends TextView {
+
+        private SquareTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            int measuredWidth = getMeasuredWidth();
+            //noinspection SuspiciousNameCombination
+            setMeasuredDimension(measuredWidth, measuredWidth);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.sharewire.googlemapsclustering;
 
 import android.support.annotation.NonNull;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -11,21 +12,58 @@ public class Cluster<T extends ClusterItem> {
 
     private final double latitude;
     private final double longitude;
-    private final List<T> items;
+    private final int itemCount;
+    private ItemsLoader<T> itemsLoader;
+    private List<T> items;
+    private final TileGrid tileGrid;
+    private final long tileX;
+    private final long tileY;
+    // The item of a cluster made of a single item of a tile that has too few items to be clustered.
+    private final T singleItem;
     private final double north;
     private final double west;
     private final double south;
     private final double east;
 
+    /**
+     * Creates a cluster of all the items of a tile.
+     */
     Cluster(double latitude, double longitude, @NonNull List<T> items,
-            double north, double west, double south, double east) {
+            @NonNull TileGrid tileGrid, long tileX, long tileY) {
+        this(latitude, longitude, items.size(), items, null, null, tileGrid, tileX, tileY);
+    }
+
+    /**
+     * Creates a cluster of all the items of a tile which loads the items only when they're requested.
+     */
+    Cluster(double latitude, double longitude, int itemCount, @NonNull ItemsLoader<T> itemsLoader,
+            @NonNull TileGrid tileGrid, long tileX, long tileY) {
+        this(latitude, longitude, itemCount, null, itemsLoader, null, tileGrid, tileX, tileY);
+    }
+
+    /**
+     * Creates a cluster of a single item of a tile that has too few items to be clustered.
+     */
+    Cluster(@NonNull T item, @NonNull TileGrid tileGrid, long tileX, long tileY) {
+        this(item.getLatitude(), item.getLongitude(), 1, Collections.singletonList(item), null, item,
+                tileGrid, tileX, tileY);
+    }
+
+    private Cluster(double latitude, double longitude, int itemCount, List<T> items, ItemsLoader<T> itemsLoader,
+                    T singleItem, @NonNull TileGrid tileGrid, long tileX, long tileY) {
         this.latitude = latitude;
         this.longitude = longitude;
+        this.itemCount = itemCount;
         this.items = items;
-        this.north = north;
-        this.west = west;
-        this.south = south;
-        this.east = east;
+        this.itemsLoader = itemsLoader;
+        this.singleItem = singleItem;
+        this.tileGrid = tileGrid;
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.north = tileGrid.getNorth(tileY);
+        this.west = tileGrid.getWest(tileX);
+        this.south = tileGrid.getSouth(tileY);
+        this.east = tileGrid.getEast(tileX);
     }
 
     /**
@@ -47,37 +85,101 @@ public class Cluster<T extends ClusterItem> {
     }
 
     /**
-     * The items contained in the cluster.
+     * The number of items contained in the cluster. Unlike {@link #getItems()}
+     * it doesn't require the items of large clusters to be collected.
+     *
+     * @return the number of items contained in the cluster
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * The items contained in the cluster. The items of large clusters are collected
+     * from the spatial index when this method is called for the first time, which
+     * takes time proportional to their amount, so prefer {@link #getItemCount()}
+     * when only the amount is needed, especially on the main thread.
      *
      * @return the items contained in the cluster
      */
     @NonNull
-    public List<T> getItems() {
+    public synchronized List<T> getItems() {
+        if (items == null) {
+            items = itemsLoader.loadItems();
+            itemsLoader = null;
+        }
         return items;
     }
 
+    /**
+     * Returns whether the items have been collected, so they no longer depend on the spatial index.
+     */
+    synchronized boolean hasLoadedItems() {
+        return items != null;
+    }
+
+    /**
+     * Returns the grid of the tile that the cluster has been made of.
+     */
+    @NonNull
+    TileGrid getTileGrid() {
+        return tileGrid;
+    }
+
+    /**
+     * Returns the key of the tile that the cluster has been made of.
+     */
+    long getTileKey() {
+        return TileGrid.getTileKey(tileX, tileY);
+    }
+
     boolean contains(double latitude, double longitude) {
         return longitude >= west && longitude <= east
                 && latitude <= north && latitude >= south;
     }
 
+    /**
+     * Returns whether the cluster has the same position and the same amount of items
+     * as the given one, and the same item if it's a single one, so the marker of one cluster
+     * can represent the other one as is.
+     */
+    boolean hasSameContent(@NonNull Cluster<T> cluster) {
+        return itemCount == cluster.itemCount
+                && Double.compare(latitude, cluster.latitude) == 0
+                && Double.compare(longitude, cluster.longitude) == 0
+                && (itemCount != 1 || getItems().equals(cluster.getItems()));
+    }
+
+    /**
+     * Clusters are equal if they're made of the same tile of the same grid, or of the same
+     * single item of such a tile, regardless of the amount and the position of their items.
+     * This allows to update the marker of a cluster when the items of its tile change.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Cluster cluster = (Cluster) o;
-        return Double.compare(cluster.latitude, latitude) == 0 &&
-                Double.compare(cluster.longitude, longitude) == 0;
+        return tileGrid.getTileCount() == cluster.tileGrid.getTileCount() &&
+                tileX == cluster.tileX &&
+                tileY == cluster.tileY &&
+                (singleItem != null ? singleItem.equals(cluster.singleItem) : cluster.singleItem == null);
     }
 
     @Override
     public int hashCode() {
         int result;
-        long temp;
-        temp = Double.doubleToLongBits(latitude);
-        result = (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(longitude);
-        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        long tileCount = tileGrid.getTileCount();
+        result = (int) (tileCount ^ (tileCount >>> 32));
+        result = 31 * result + (int) (tileX ^ (tileX >>> 32));
+        result = 31 * result + (int) (tileY ^ (tileY >>> 32));
+        result = 31 * result + (singleItem != null ? singleItem.hashCode() : 0);
         return result;
     }
+
+    interface ItemsLoader<T extends ClusterItem> {
+
+        @NonNull
+        List<T> loadItems();
+    }
 }
@@ -0,0 +1,129 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of the clusters of individual tiles of the tile grids of different integer
+ * zoom levels, keyed by the tile count of the grid and the tile. Holds up to
+ * the given number of tiles and evicts the least recently used ones. The cached tiles
+ * must be invalidated whenever the items inside them change.
+ */
+class ClusterCache<T extends ClusterItem> {
+
+    private final Map<TileKey, List<Cluster<T>>> tiles = new LinkedHashMap<>(16, 0.75F, true);
+
+    // The grids of the cached tiles by their tile count.
+    private final Map<Long, TileGrid> grids = new HashMap<>();
+
+    private int maxSize;
+
+    private int minClusterSize;
+
+    private long hitCount;
+
+    private long missCount;
+
+    synchronized boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trimToSize();
+    }
+
+    @Nullable
+    synchronized List<Cluster<T>> get(@NonNull TileGrid grid, long tileKey, int minClusterSize) {
+        List<Cluster<T>> clusters = minClusterSize == this.minClusterSize
+                ? tiles.get(new TileKey(grid.getTileCount(), tileKey)) : null;
+
+        if (clusters != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+
+        return clusters;
+    }
+
+    synchronized void put(@NonNull TileGrid grid, long tileKey, int minClusterSize,
+                          @NonNull List<Cluster<T>> clusters) {
+        if (maxSize == 0) {
+            return;
+        }
+
+        // The clusters depend on the minimum cluster size, so cache them for only one size at a time.
+        if (minClusterSize != this.minClusterSize) {
+            clear();
+            this.minClusterSize = minClusterSize;
+        }
+
+        grids.put(grid.getTileCount(), grid);
+        tiles.put(new TileKey(grid.getTileCount(), tileKey), clusters);
+        trimToSize();
+    }
+
+    /**
+     * Removes the tiles of all the grids that contain the given location.
+     */
+    synchronized void invalidate(double latitude, double longitude) {
+        for (TileGrid grid : grids.values()) {
+            long tileKey = TileGrid.getTileKey(grid.getTileX(longitude), grid.getTileY(latitude));
+            tiles.remove(new TileKey(grid.getTileCount(), tileKey));
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        grids.clear();
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private void trimToSize() {
+        Iterator<TileKey> iterator = tiles.keySet().iterator();
+        while (tiles.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static class TileKey {
+
+        private final long tileCount;
+        private final long tileKey;
+
+        private TileKey(long tileCount, long tileKey) {
+            this.tileCount = tileCount;
+            this.tileKey = tileKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileKey key = (TileKey) o;
+            return tileCount == key.tileCount && tileKey == key.tileKey;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (tileCount ^ (tileCount >>> 32));
+            result = 31 * result + (int) (tileKey ^ (tileKey >>> 32));
+            return result;
+        }
+    }
+}
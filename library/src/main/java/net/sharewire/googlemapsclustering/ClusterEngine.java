@@ -0,0 +1,263 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clusters items inside a region of the map. Holds the spatial index of the items
+ * and the algorithm that clusters them. Doesn't depend on the Android framework,
+ * so it's not thread-safe and must be used from a single thread.
+ */
+class ClusterEngine<T extends ClusterItem> {
+
+    static final int QUAD_TREE_BUCKET_CAPACITY = 4;
+    static final int KD_TREE_NODE_SIZE = 64;
+    static final int MORTON_INDEX_LEAF_SIZE = 32;
+
+    private SpatialIndex<T> spatialIndex;
+
+    private ClusteringAlgorithm<T> clusteringAlgorithm;
+
+    private final ClusterCache<T> clusterCache = new ClusterCache<>();
+
+    // The last returned clusters that haven't collected their items yet.
+    // They can still be rendered while the items change.
+    private List<Cluster<T>> lazyClusters = Collections.emptyList();
+
+    // The center of the last clustered region. The tiles farthest from it are merged first
+    // when there are more clusters than markers allowed.
+    private double centerLatitude;
+    private double centerLongitude;
+
+    ClusterEngine(@NonNull SpatialIndex<T> spatialIndex) {
+        this.spatialIndex = spatialIndex;
+        clusteringAlgorithm = new GridClusteringAlgorithm<>(null, clusterCache);
+    }
+
+    @NonNull
+    ClusterCache<T> getClusterCache() {
+        return clusterCache;
+    }
+
+    /**
+     * Replaces the items with the ones stored in the given index.
+     *
+     * @param clusteringAlgorithm a new instance of the algorithm to cluster the items with
+     */
+    void setItems(@NonNull SpatialIndex<T> spatialIndex, @NonNull ClusteringAlgorithm<T> clusteringAlgorithm) {
+        this.spatialIndex = spatialIndex;
+        this.clusteringAlgorithm = clusteringAlgorithm;
+        clusterCache.clear();
+        lazyClusters = Collections.emptyList();
+    }
+
+    /**
+     * Returns the clusters inside the given region. If the west longitude is greater than
+     * the east one, the region crosses the 180th meridian.
+     * <p>
+     * If there are more clusters than the given maximum number of markers, the region is clustered
+     * using coarser tiles until every tile fits into a single marker, and then the items of the tiles
+     * farthest from the center of the region are merged into one cluster per tile.
+     */
+    @NonNull
+    List<Cluster<T>> getClusters(double north, double west, double south, double east, float zoomLevel,
+                                 int minClusterSize, int maxMarkerCount, int threadCount) {
+        centerLatitude = (north + south) / 2;
+        centerLongitude = west <= east ? (west + east) / 2 : normalizeLongitude((west + east + 360.0) / 2);
+
+        List<Cluster<T>> clusters = clusteringAlgorithm.getClusters(spatialIndex, north, west, south, east,
+                zoomLevel, minClusterSize, threadCount);
+
+        while (clusters.size() > maxMarkerCount && zoomLevel >= 1
+                && !Thread.currentThread().isInterrupted() && getTileCount(clusters) > maxMarkerCount) {
+            zoomLevel -= 1;
+            clusters = clusteringAlgorithm.getClusters(spatialIndex, north, west, south, east,
+                    zoomLevel, minClusterSize, threadCount);
+        }
+
+        return keepClusters(limitMarkerCount(clusters, maxMarkerCount));
+    }
+
+    /**
+     * Applies the changes of the items and updates the clusters of the last clustered region.
+     *
+     * @return the clusters of the last clustered region, or <code>null</code>
+     * if the region has to be clustered again
+     */
+    @Nullable
+    List<Cluster<T>> applyItemChanges(@NonNull List<ItemChange<T>> itemChanges, int maxMarkerCount) {
+        loadChangedItems(itemChanges);
+
+        for (ItemChange<T> itemChange : itemChanges) {
+            T clusterItem = itemChange.clusterItem;
+
+            switch (itemChange.type) {
+                case ADD:
+                    spatialIndex.insert(clusterItem);
+                    break;
+                case REMOVE:
+                    spatialIndex.remove(clusterItem);
+                    break;
+                case UPDATE:
+                    spatialIndex.relocate(clusterItem,
+                            itemChange.previousLatitude, itemChange.previousLongitude);
+                    break;
+            }
+        }
+
+        List<Cluster<T>> clusters = clusteringAlgorithm.updateClusters(spatialIndex, itemChanges);
+
+        // The tiles are too small to fit into the markers after the changes.
+        if (clusters == null || getTileCount(clusters) > maxMarkerCount) {
+            return null;
+        }
+        return keepClusters(limitMarkerCount(clusters, maxMarkerCount));
+    }
+
+    /**
+     * Collects the items of the last returned clusters whose tiles contain the changed items
+     * before the index changes, since the clusters load their items from the index lazily
+     * and must keep the items they have been counted with.
+     */
+    private void loadChangedItems(@NonNull List<ItemChange<T>> itemChanges) {
+        for (ItemChange<T> itemChange : itemChanges) {
+            T clusterItem = itemChange.clusterItem;
+            loadItemsAt(clusterItem.getLatitude(), clusterItem.getLongitude());
+            if (itemChange.type == ItemChange.Type.UPDATE) {
+                loadItemsAt(itemChange.previousLatitude, itemChange.previousLongitude);
+            }
+        }
+    }
+
+    private void loadItemsAt(double latitude, double longitude) {
+        for (Cluster<T> cluster : lazyClusters) {
+            if (cluster.contains(latitude, longitude)) {
+                cluster.getItems();
+            }
+        }
+    }
+
+    @NonNull
+    private List<Cluster<T>> keepClusters(@NonNull List<Cluster<T>> clusters) {
+        // The clusters of an interrupted run are never rendered.
+        if (!Thread.currentThread().isInterrupted()) {
+            lazyClusters = new ArrayList<>();
+            for (Cluster<T> cluster : clusters) {
+                if (!cluster.hasLoadedItems()) {
+                    lazyClusters.add(cluster);
+                }
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Merges the clusters of the tiles that have several clusters into one cluster per tile,
+     * starting from the tiles farthest from the center of the region, until the number
+     * of clusters doesn't exceed the given maximum.
+     */
+    @NonNull
+    private List<Cluster<T>> limitMarkerCount(@NonNull List<Cluster<T>> clusters, int maxMarkerCount) {
+        if (clusters.size() <= maxMarkerCount) {
+            return clusters;
+        }
+
+        Map<Long, TileGroup<T>> tileGroups = new HashMap<>();
+        for (Cluster<T> cluster : clusters) {
+            Long tileKey = cluster.getTileKey();
+            TileGroup<T> tileGroup = tileGroups.get(tileKey);
+            if (tileGroup == null) {
+                tileGroup = new TileGroup<>(tileKey);
+                tileGroups.put(tileKey, tileGroup);
+            }
+            tileGroup.clusters.add(cluster);
+        }
+
+        List<TileGroup<T>> mergeableGroups = new ArrayList<>();
+        for (TileGroup<T> tileGroup : tileGroups.values()) {
+            if (tileGroup.clusters.size() > 1) {
+                Cluster<T> cluster = tileGroup.clusters.get(0);
+                double latitudeDistance = cluster.getLatitude() - centerLatitude;
+                double longitudeDistance = Math.abs(cluster.getLongitude() - centerLongitude);
+                if (longitudeDistance > 180.0) {
+                    longitudeDistance = 360.0 - longitudeDistance;
+                }
+                tileGroup.distanceToCenter = latitudeDistance * latitudeDistance
+                        + longitudeDistance * longitudeDistance;
+                mergeableGroups.add(tileGroup);
+            }
+        }
+
+        Collections.sort(mergeableGroups, new Comparator<TileGroup<T>>() {
+            @Override
+            public int compare(TileGroup<T> first, TileGroup<T> second) {
+                return Double.compare(second.distanceToCenter, first.distanceToCenter);
+            }
+        });
+
+        int markerCount = clusters.size();
+        for (TileGroup<T> tileGroup : mergeableGroups) {
+            if (markerCount <= maxMarkerCount) {
+                break;
+            }
+            markerCount -= tileGroup.clusters.size() - 1;
+            tileGroup.clusters = Collections.singletonList(tileGroup.merge());
+        }
+
+        List<Cluster<T>> result = new ArrayList<>(markerCount);
+        for (TileGroup<T> tileGroup : tileGroups.values()) {
+            result.addAll(tileGroup.clusters);
+        }
+        return result;
+    }
+
+    private static <T extends ClusterItem> int getTileCount(@NonNull List<Cluster<T>> clusters) {
+        Set<Long> tileKeys = new HashSet<>();
+        for (Cluster<T> cluster : clusters) {
+            tileKeys.add(cluster.getTileKey());
+        }
+        return tileKeys.size();
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        return longitude > 180.0 ? longitude - 360.0 : longitude;
+    }
+
+    /**
+     * The clusters of a single tile.
+     */
+    private static class TileGroup<T extends ClusterItem> {
+
+        private final long tileKey;
+        private List<Cluster<T>> clusters = new ArrayList<>();
+        private double distanceToCenter;
+
+        private TileGroup(long tileKey) {
+            this.tileKey = tileKey;
+        }
+
+        @NonNull
+        private Cluster<T> merge() {
+            List<T> items = new ArrayList<>();
+            double latitudeSum = 0;
+            double longitudeSum = 0;
+            for (Cluster<T> cluster : clusters) {
+                items.addAll(cluster.getItems());
+                latitudeSum += cluster.getLatitude() * cluster.getItemCount();
+                longitudeSum += cluster.getLongitude() * cluster.getItemCount();
+            }
+
+            return new Cluster<>(latitudeSum / items.size(), longitudeSum / items.size(), items,
+                    clusters.get(0).getTileGrid(), TileGrid.getKeyTileX(tileKey), TileGrid.getKeyTileY(tileKey));
+        }
+    }
+}
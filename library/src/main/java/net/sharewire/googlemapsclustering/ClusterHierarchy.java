@@ -0,0 +1,183 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static net.sharewire.googlemapsclustering.Preconditions.checkArgument;
+
+/**
+ * Precomputed clusters for every integer zoom level from 0 to the max zoom level.
+ * Uses the same grid as {@link ClusterManager}: a tile at the zoom level z is split into
+ * four tiles at the zoom level z + 1, so the clusters of each level are built by merging
+ * the clusters of the level below. Getting the clusters of a visible region then only
+ * takes a lookup per visible tile, regardless of the amount of items.
+ */
+class ClusterHierarchy<T extends ClusterItem> {
+
+    private static final int MAX_ZOOM = 16;
+
+    // The items are sorted by the Morton code of their tile at the max zoom level,
+    // so the items of any cluster at any zoom level form a contiguous range.
+    private static final int TILE_CODE_BITS = 2 * (MAX_ZOOM + 1);
+    private static final int ITEM_INDEX_BITS = Long.SIZE - 1 - TILE_CODE_BITS;
+
+    private final List<T> items;
+
+    private final Level[] levels = new Level[MAX_ZOOM + 1];
+
+    ClusterHierarchy(@NonNull List<T> clusterItems) {
+        this(clusterItems, null, null);
+    }
+
+    /**
+     * @param latitudes  the latitudes of the items in the same order as the items,
+     *                   or <code>null</code> to read them from the items
+     * @param longitudes the longitudes of the items in the same order as the items,
+     *                   or <code>null</code> to read them from the items
+     */
+    ClusterHierarchy(@NonNull List<T> clusterItems, @Nullable double[] latitudes, @Nullable double[] longitudes) {
+        int itemCount = clusterItems.size();
+        checkArgument(itemCount < (1L << ITEM_INDEX_BITS));
+
+        if (latitudes == null || longitudes == null) {
+            latitudes = new double[itemCount];
+            longitudes = new double[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                T clusterItem = clusterItems.get(i);
+                latitudes[i] = clusterItem.getLatitude();
+                longitudes[i] = clusterItem.getLongitude();
+            }
+        }
+
+        TileGrid grid = new TileGrid(MAX_ZOOM);
+        long maxTile = (2L << MAX_ZOOM) - 1;
+
+        long[] entries = new long[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            // Items on the east and south edges of the map belong to the last tiles.
+            long tileX = Math.min(maxTile, grid.getTileX(longitudes[i]));
+            long tileY = Math.min(maxTile, grid.getTileY(latitudes[i]));
+            entries[i] = (MortonCode.encode((int) tileX, (int) tileY) << ITEM_INDEX_BITS) | i;
+        }
+        Arrays.sort(entries);
+
+        List<T> items = new ArrayList<>(itemCount);
+        Level level = new Level(itemCount);
+        long itemIndexMask = (1L << ITEM_INDEX_BITS) - 1;
+
+        for (int i = 0; i < itemCount; i++) {
+            int itemIndex = (int) (entries[i] & itemIndexMask);
+            items.add(clusterItems.get(itemIndex));
+            level.add(entries[i] >>> ITEM_INDEX_BITS, 1, latitudes[itemIndex], longitudes[itemIndex]);
+        }
+        levels[MAX_ZOOM] = level.trim();
+
+        for (int zoom = MAX_ZOOM - 1; zoom >= 0; zoom--) {
+            Level childLevel = levels[zoom + 1];
+            level = new Level(childLevel.size);
+            for (int i = 0; i < childLevel.size; i++) {
+                level.add(childLevel.tileCodes[i] >>> 2, childLevel.counts[i],
+                        childLevel.latitudeSums[i], childLevel.longitudeSums[i]);
+            }
+            levels[zoom] = level.trim();
+        }
+
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Returns whether the clusters for the given zoom level are precomputed. Negative zoom levels,
+     * which large cluster radii lead to at the lowest zoom levels of the map, have coarser grids
+     * than the precomputed ones.
+     */
+    boolean hasZoomLevel(float zoomLevel) {
+        return zoomLevel >= 0 && zoomLevel < MAX_ZOOM + 1;
+    }
+
+    /**
+     * Returns the grid of the precomputed level used for the given zoom level.
+     */
+    @NonNull
+    TileGrid getTileGrid(float zoomLevel) {
+        return new TileGrid(getZoom(zoomLevel));
+    }
+
+    void getClustersInsideTiles(@NonNull List<Cluster<T>> clusters, float zoomLevel,
+                                @NonNull TileRange range, int minClusterSize) {
+        int zoom = getZoom(zoomLevel);
+        Level level = levels[zoom];
+        TileGrid grid = new TileGrid(zoom);
+
+        for (long tileX = range.startX; tileX <= range.endX; tileX++) {
+            for (long tileY = range.startY; tileY <= range.endY; tileY++) {
+                int i = Arrays.binarySearch(level.tileCodes, MortonCode.encode((int) tileX, (int) tileY));
+                if (i < 0) {
+                    continue;
+                }
+
+                int count = level.counts[i];
+                int start = level.starts[i];
+
+                if (count >= minClusterSize) {
+                    clusters.add(new Cluster<>(level.latitudeSums[i] / count, level.longitudeSums[i] / count,
+                            items.subList(start, start + count), grid, tileX, tileY));
+                } else {
+                    for (int j = start; j < start + count; j++) {
+                        clusters.add(new Cluster<>(items.get(j), grid, tileX, tileY));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getZoom(float zoomLevel) {
+        return Math.max(0, Math.min(MAX_ZOOM, (int) zoomLevel));
+    }
+
+    private static class Level {
+
+        private long[] tileCodes;
+        private int[] counts;
+        private int[] starts;
+        private double[] latitudeSums;
+        private double[] longitudeSums;
+        private int size;
+        private int itemCount;
+
+        private Level(int capacity) {
+            tileCodes = new long[capacity];
+            counts = new int[capacity];
+            starts = new int[capacity];
+            latitudeSums = new double[capacity];
+            longitudeSums = new double[capacity];
+        }
+
+        // Adds a cluster to the level or merges it with the last one if they share a tile.
+        private void add(long tileCode, int count, double latitudeSum, double longitudeSum) {
+            if (size == 0 || tileCodes[size - 1] != tileCode) {
+                tileCodes[size] = tileCode;
+                starts[size] = itemCount;
+                size++;
+            }
+            counts[size - 1] += count;
+            latitudeSums[size - 1] += latitudeSum;
+            longitudeSums[size - 1] += longitudeSum;
+            itemCount += count;
+        }
+
+        @NonNull
+        private Level trim() {
+            tileCodes = Arrays.copyOf(tileCodes, size);
+            counts = Arrays.copyOf(counts, size);
+            starts = Arrays.copyOf(starts, size);
+            latitudeSums = Arrays.copyOf(latitudeSums, size);
+            longitudeSums = Arrays.copyOf(longitudeSums, size);
+            return this;
+        }
+    }
+}
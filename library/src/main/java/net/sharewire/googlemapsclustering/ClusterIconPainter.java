@@ -0,0 +1,67 @@
+package net.sharewire.googlemapsclustering;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+
+/**
+ * Draws cluster icons directly on a canvas: a circle with a stroke and the text in the center.
+ * Doesn't create any views, so it's several times faster than drawing an equivalent view
+ * and can be used on any thread.
+ */
+class ClusterIconPainter {
+
+    private final int mMinSize;
+
+    private final int mPadding;
+
+    ClusterIconPainter(@NonNull Context context) {
+        Resources resources = context.getResources();
+        mMinSize = resources.getDimensionPixelSize(R.dimen.cluster_icon_min_size);
+        mPadding = resources.getDimensionPixelSize(R.dimen.cluster_icon_padding);
+    }
+
+    /**
+     * Draws the icon with the given text. Can be called on any thread.
+     */
+    @NonNull
+    Bitmap draw(@NonNull IconStyle iconStyle, @NonNull String text) {
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(iconStyle.getClusterTextColor());
+        textPaint.setTextSize(iconStyle.getClusterTextSize());
+        textPaint.setTextAlign(Paint.Align.CENTER);
+
+        // The icon is square and as wide as the text with the padding on both sides,
+        // but not smaller than the minimum size.
+        int size = Math.max(mMinSize, (int) Math.ceil(textPaint.measureText(text)) + 2 * mPadding);
+        float center = size / 2.0F;
+
+        // The stroke is drawn inside of the icon bounds, like in a GradientDrawable.
+        float strokeWidth = iconStyle.getClusterStrokeWidth();
+        float radius = center - strokeWidth / 2.0F;
+
+        Bitmap iconBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(iconBitmap);
+
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setStyle(Paint.Style.FILL);
+        circlePaint.setColor(iconStyle.getClusterBackgroundColor());
+        canvas.drawCircle(center, center, radius, circlePaint);
+
+        if (strokeWidth > 0) {
+            circlePaint.setStyle(Paint.Style.STROKE);
+            circlePaint.setStrokeWidth(strokeWidth);
+            circlePaint.setColor(iconStyle.getClusterStrokeColor());
+            canvas.drawCircle(center, center, radius, circlePaint);
+        }
+
+        // Center the text vertically without the font padding.
+        float baseline = center - (textPaint.ascent() + textPaint.descent()) / 2.0F;
+        canvas.drawText(text, center, baseline, textPaint);
+
+        return iconBitmap;
+    }
+}
@@ -2,14 +2,15 @@ package net.sharewire.googlemapsclustering;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLngBounds;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -21,17 +22,20 @@ import static net.sharewire.googlemapsclustering.Preconditions.checkNotNull;
  * Groups multiple items on a map into clusters based on the current zoom level.
  * Clustering occurs when the map becomes idle, so an instance of this class
  * must be set as a camera idle listener using {@link GoogleMap#setOnCameraIdleListener}.
+ * To also update the clusters while the camera moves, see {@link #setClusteringOnCameraMoveEnabled(boolean)}.
  *
  * @param <T> the type of an item to be clustered
  */
-public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCameraIdleListener {
+public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCameraIdleListener,
+        GoogleMap.OnCameraMoveListener {
 
-    private static final int QUAD_TREE_BUCKET_CAPACITY = 4;
     private static final int DEFAULT_MIN_CLUSTER_SIZE = 1;
+    private static final int DEFAULT_CLUSTERING_THREAD_COUNT = 1;
+    private static final long DEFAULT_CAMERA_MOVE_CLUSTERING_INTERVAL = 33;
 
     private final GoogleMap mGoogleMap;
 
-    private final QuadTree<T> mQuadTree;
+    private final ClusterEngine<T> mClusterEngine;
 
     private final ClusterRenderer<T> mRenderer;
 
@@ -39,10 +43,82 @@ public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCamera
 
     private AsyncTask mQuadTreeTask;
 
-    private AsyncTask mClusterTask;
+    private ClusterTask mClusterTask;
+
+    private volatile ClusterRequest mClusterRequest;
+
+    private UpdateTask mUpdateTask;
+
+    private final List<ItemChange<T>> mPendingItemChanges = new ArrayList<>();
 
     private int mMinClusterSize = DEFAULT_MIN_CLUSTER_SIZE;
 
+    private int mClusteringThreadCount = DEFAULT_CLUSTERING_THREAD_COUNT;
+
+    private int mMaxMarkerCount = Integer.MAX_VALUE;
+
+    // The difference between the zoom level of the grid used for clustering and the camera zoom level.
+    private float mClusteringZoomOffset;
+
+    private SpatialIndexType mSpatialIndexType = SpatialIndexType.QUAD_TREE;
+
+    private ClusteringAlgorithmType mClusteringAlgorithmType = ClusteringAlgorithmType.GRID;
+
+    private boolean mClusterHierarchyEnabled;
+
+    private boolean mClusteringOnCameraMoveEnabled;
+
+    private long mCameraMoveClusteringInterval = DEFAULT_CAMERA_MOVE_CLUSTERING_INTERVAL;
+
+    private long mLastCameraMoveClusteringTime;
+
+    private float mLastClusteringZoom = -1;
+
+    /**
+     * Types of the spatial index used to look up items inside the visible region.
+     */
+    public enum SpatialIndexType {
+        /**
+         * A dynamic quad tree. Suits most use cases.
+         */
+        QUAD_TREE,
+
+        /**
+         * A static k-d tree stored in primitive arrays. Takes several times less memory
+         * than {@link #QUAD_TREE} and doesn't allocate objects per tree node, so it's
+         * preferable for large amounts of items.
+         */
+        KD_TREE,
+
+        /**
+         * A static index that stores the coordinates in primitive arrays sorted along
+         * the Z-order curve, so that the items close to each other are stored close
+         * to each other in memory. Takes about as much memory as {@link #KD_TREE},
+         * and its queries scan contiguous ranges of the arrays, which makes it
+         * the fastest to cluster large amounts of items.
+         */
+        MORTON
+    }
+
+    /**
+     * Algorithms used to group items into clusters.
+     */
+    public enum ClusteringAlgorithmType {
+        /**
+         * Groups the items into the tiles of a grid that depends on the zoom level rounded down
+         * to an integer. The fastest algorithm, but groups of items that lie on the boundaries
+         * of the tiles are split into several clusters.
+         */
+        GRID,
+
+        /**
+         * Groups the items that are close to each other on the screen, regardless of the tiles.
+         * Takes time proportional to the amount of visible items, so it's slower than {@link #GRID},
+         * especially at low zoom levels, and it doesn't use the cluster hierarchy or the cluster cache.
+         */
+        DISTANCE
+    }
+
     /**
      * Defines signatures for methods that are called when a cluster or a cluster item is clicked.
      *
@@ -81,7 +157,7 @@ public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCamera
         checkNotNull(context);
         mGoogleMap = checkNotNull(googleMap);
         mRenderer = new ClusterRenderer<>(context, googleMap);
-        mQuadTree = new QuadTree<>(QUAD_TREE_BUCKET_CAPACITY);
+        mClusterEngine = new ClusterEngine<>(createSpatialIndex(mSpatialIndexType));
     }
 
     /**
@@ -111,7 +187,76 @@ public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCamera
      */
     public void setItems(@NonNull List<T> clusterItems) {
         checkNotNull(clusterItems);
-        buildQuadTree(clusterItems);
+        synchronized (mPendingItemChanges) {
+            mPendingItemChanges.clear();
+        }
+        buildQuadTree(clusterItems, null, null);
+    }
+
+    /**
+     * Sets items to be clustered thus replacing the old ones, along with their coordinates.
+     * With {@link SpatialIndexType#KD_TREE} or {@link SpatialIndexType#MORTON}, the items are
+     * indexed and clustered using the given coordinates without calling the methods of the items,
+     * which is faster for large amounts of items. The items are only accessed for the clusters
+     * and the markers that are shown. Once any item is added, removed or moved,
+     * the coordinates are read from the items again.
+     *
+     * @param clusterItems the items to be clustered
+     * @param latitudes    the latitudes of the items in the same order as the items.
+     *                     The array must not be modified afterwards.
+     * @param longitudes   the longitudes of the items in the same order as the items.
+     *                     The array must not be modified afterwards.
+     */
+    public void setItems(@NonNull List<T> clusterItems, @NonNull double[] latitudes, @NonNull double[] longitudes) {
+        checkNotNull(clusterItems);
+        checkNotNull(latitudes);
+        checkNotNull(longitudes);
+        checkArgument(latitudes.length == clusterItems.size() && longitudes.length == clusterItems.size());
+        synchronized (mPendingItemChanges) {
+            mPendingItemChanges.clear();
+        }
+        buildQuadTree(clusterItems, latitudes, longitudes);
+    }
+
+    /**
+     * Adds items to be clustered to the existing ones. Unlike {@link #setItems(List)},
+     * only re-clusters the tiles where the items are added.
+     *
+     * @param clusterItems the items to be added
+     */
+    public void addItems(@NonNull List<T> clusterItems) {
+        checkNotNull(clusterItems);
+        for (T clusterItem : clusterItems) {
+            scheduleItemChange(new ItemChange<>(ItemChange.Type.ADD, clusterItem, 0, 0));
+        }
+    }
+
+    /**
+     * Removes the given items from the clustered ones. Unlike {@link #setItems(List)},
+     * only re-clusters the tiles where the items are removed. Items are located
+     * by their current position, so they must not be moved before being removed.
+     *
+     * @param clusterItems the items to be removed
+     */
+    public void removeItems(@NonNull List<T> clusterItems) {
+        checkNotNull(clusterItems);
+        for (T clusterItem : clusterItems) {
+            scheduleItemChange(new ItemChange<>(ItemChange.Type.REMOVE, clusterItem, 0, 0));
+        }
+    }
+
+    /**
+     * Notifies that the position of the given item has changed. Only re-clusters
+     * the tiles containing the previous and the new position of the item.
+     *
+     * @param clusterItem       the item whose position has changed
+     * @param previousLatitude  the latitude of the item before the change
+     * @param previousLongitude the longitude of the item before the change
+     */
+    public void updateItemPosition(@NonNull T clusterItem, double previousLatitude, double previousLongitude) {
+        checkNotNull(clusterItem);
+        scheduleItemChange(new ItemChange<>(ItemChange.Type.UPDATE, clusterItem,
+                previousLatitude, previousLongitude));
     }
 
     /**
@@ -123,119 +268,355 @@ public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCamera
         mMinClusterSize = minClusterSize;
     }
 
+    /**
+     * Sets the distance on the screen within which items are grouped into a cluster, which stays
+     * the same at any latitude. {@link ClusteringAlgorithmType#GRID} groups the items into square
+     * tiles twice as large as the radius at integer zoom levels, which grow up to twice as large
+     * until the next integer zoom level. {@link ClusteringAlgorithmType#DISTANCE} groups
+     * the items within the radius around the first item of a cluster.
+     *
+     * @param clusterRadius the cluster radius in dp, 64 by default
+     */
+    public void setClusterRadius(int clusterRadius) {
+        checkArgument(clusterRadius > 0);
+        mClusteringZoomOffset = TileGrid.getZoomOffset(clusterRadius);
+    }
+
+    /**
+     * Sets the number of threads used to cluster the visible region. The region is split
+     * into bands that are clustered concurrently, which speeds up clustering of large regions
+     * with many items on multi-core devices. The order of the resulting clusters
+     * doesn't depend on the number of threads.
+     *
+     * @param threadCount the number of threads, 1 by default
+     */
+    public void setClusteringThreadCount(int threadCount) {
+        checkArgument(threadCount > 0);
+        mClusteringThreadCount = threadCount;
+    }
+
+    /**
+     * Sets the maximum number of tiles whose clusters are cached across camera moves, so that
+     * returning to a previously visited zoom level and region doesn't require clustering again.
+     * The least recently used tiles are evicted first. The cache is invalidated automatically
+     * when items change.
+     *
+     * @param maxTileCount the maximum number of cached tiles, 0 (the default) disables caching
+     */
+    public void setClusterCacheSize(int maxTileCount) {
+        checkArgument(maxTileCount >= 0);
+        mClusterEngine.getClusterCache().setMaxSize(maxTileCount);
+    }
+
+    /**
+     * Returns the number of tiles whose clusters have been found in the cache.
+     *
+     * @return the number of cache hits
+     * @see #setClusterCacheSize(int)
+     */
+    public long getClusterCacheHitCount() {
+        return mClusterEngine.getClusterCache().getHitCount();
+    }
+
+    /**
+     * Returns the number of tiles whose clusters haven't been found in the cache.
+     *
+     * @return the number of cache misses
+     * @see #setClusterCacheSize(int)
+     */
+    public long getClusterCacheMissCount() {
+        return mClusterEngine.getClusterCache().getMissCount();
+    }
+
+    /**
+     * Sets the maximum number of markers shown on the map at once, no matter how dense the items are.
+     * When there are more clusters than that, the visible region is clustered using larger tiles
+     * until each tile fits into one marker, and then the items of the tiles farthest from the center
+     * of the visible region are clustered regardless of the minimum cluster size.
+     *
+     * @param maxMarkerCount the maximum number of markers, unlimited by default
+     */
+    public void setMaxMarkerCount(int maxMarkerCount) {
+        checkArgument(maxMarkerCount > 0);
+        mMaxMarkerCount = maxMarkerCount;
+    }
+
+    /**
+     * Sets the maximum number of markers that are kept hidden on the map after their clusters
+     * disappear, so that they can be reused for new clusters. Reusing a marker is much cheaper
+     * than removing it from the map and adding a new one.
+     *
+     * @param maxMarkerCount the maximum number of hidden markers, 100 by default
+     */
+    public void setMarkerPoolSize(int maxMarkerCount) {
+        checkArgument(maxMarkerCount >= 0);
+        mRenderer.setMarkerPoolSize(maxMarkerCount);
+    }
+
+    /**
+     * Sets the maximum number of markers that are animated when clusters change. If more markers
+     * have to be added, removed or moved at once, they change without animation, because
+     * animating that many markers makes the map stutter.
+     *
+     * @param maxMarkerCount the maximum number of animated markers, 300 by default
+     */
+    public void setMaxAnimatedMarkerCount(int maxMarkerCount) {
+        checkArgument(maxMarkerCount >= 0);
+        mRenderer.setMaxAnimatedMarkerCount(maxMarkerCount);
+    }
+
+    /**
+     * Returns the number of markers that have been reused for new clusters.
+     *
+     * @return the number of reused markers
+     * @see #setMarkerPoolSize(int)
+     */
+    public long getReusedMarkerCount() {
+        return mRenderer.getReusedMarkerCount();
+    }
+
+    /**
+     * Returns the number of markers that have been added to the map.
+     *
+     * @return the number of created markers
+     * @see #setMarkerPoolSize(int)
+     */
+    public long getCreatedMarkerCount() {
+        return mRenderer.getCreatedMarkerCount();
+    }
+
+    /**
+     * Sets the type of the spatial index used to store items. The new type
+     * takes effect the next time items are set using {@link #setItems(List)}.
+     * Only {@link SpatialIndexType#QUAD_TREE} is updated incrementally when items are added,
+     * removed or moved. The static indexes remove an item in time proportional to the amount
+     * of items and are rebuilt from all the items the next time they're queried after any change,
+     * so they suit items that rarely change.
+     *
+     * @param spatialIndexType the type of the spatial index
+     */
+    public void setSpatialIndexType(@NonNull SpatialIndexType spatialIndexType) {
+        mSpatialIndexType = checkNotNull(spatialIndexType);
+    }
+
+    /**
+     * Sets the algorithm used to group items into clusters. The new algorithm
+     * takes effect the next time items are set using {@link #setItems(List)}.
+     * Unlike {@link ClusteringAlgorithmType#GRID}, {@link ClusteringAlgorithmType#DISTANCE}
+     * can't re-cluster only the changed tiles, so adding, removing or moving any item
+     * clusters the whole visible region again.
+     *
+     * @param clusteringAlgorithmType the type of the clustering algorithm
+     */
+    public void setClusteringAlgorithmType(@NonNull ClusteringAlgorithmType clusteringAlgorithmType) {
+        mClusteringAlgorithmType = checkNotNull(clusteringAlgorithmType);
+    }
+
+    /**
+     * Enables or disables precomputing clusters for every integer zoom level when items are set.
+     * Precomputing takes extra time and memory once, but after that getting the clusters for
+     * any visible region takes time proportional to the amount of visible clusters rather
+     * than the amount of items, which makes it preferable for hundreds of thousands of items.
+     * Note that fractional zoom levels are rounded down to the nearest precomputed level.
+     * The precomputed clusters can't be updated, so they're dropped once items are added,
+     * removed or moved, and the following regions are clustered from the spatial index.
+     * Only applies to {@link ClusteringAlgorithmType#GRID}. The new value takes effect
+     * the next time items are set using {@link #setItems(List)}.
+     *
+     * @param enabled whether to precompute clusters for every zoom level
+     */
+    public void setClusterHierarchyEnabled(boolean enabled) {
+        mClusterHierarchyEnabled = enabled;
+    }
+
+    /**
+     * Enables or disables updating the clusters while the camera moves, not only when it becomes idle.
+     * The clusters are updated at most once per the interval set by
+     * {@link #setCameraMoveClusteringInterval(long)}, and the markers change without animation
+     * until the camera stops. When enabled, an instance of this class must also be set
+     * as a camera move listener using {@link GoogleMap#setOnCameraMoveListener}.
+     *
+     * @param enabled whether to update the clusters while the camera moves, disabled by default
+     */
+    public void setClusteringOnCameraMoveEnabled(boolean enabled) {
+        mClusteringOnCameraMoveEnabled = enabled;
+    }
+
+    /**
+     * Sets the minimum time between two updates of the clusters while the camera moves.
+     * If clustering takes longer than that, the clusters are updated as soon as
+     * the previous update is done.
+     *
+     * @param intervalMillis the minimum time between two updates in milliseconds,
+     *                       33 by default (30 updates per second)
+     * @see #setClusteringOnCameraMoveEnabled(boolean)
+     */
+    public void setCameraMoveClusteringInterval(long intervalMillis) {
+        checkArgument(intervalMillis >= 0);
+        mCameraMoveClusteringInterval = intervalMillis;
+    }
+
     @Override
     public void onCameraIdle() {
         cluster();
     }
 
-    private void buildQuadTree(@NonNull List<T> clusterItems) {
-        if (mQuadTreeTask != null) {
-            mQuadTreeTask.cancel(true);
+    @Override
+    public void onCameraMove() {
+        if (!mClusteringOnCameraMoveEnabled) {
+            return;
         }
 
-        mQuadTreeTask = new QuadTreeTask(clusterItems).executeOnExecutor(mExecutor);
-    }
-
-    private void cluster() {
-        if (mClusterTask != null) {
-            mClusterTask.cancel(true);
+        long time = SystemClock.uptimeMillis();
+        if (time - mLastCameraMoveClusteringTime < mCameraMoveClusteringInterval) {
+            return;
+        }
+        mLastCameraMoveClusteringTime = time;
+
+        CameraPosition cameraPosition = mGoogleMap.getCameraPosition();
+        float zoomLevel = cameraPosition.zoom;
+        // While the camera zooms, use the integer zoom level below the current one, so that the updates
+        // share the same tiles and only the tiles that have become visible are clustered.
+        if (zoomLevel != mLastClusteringZoom) {
+            mLastClusteringZoom = zoomLevel;
+            zoomLevel = (float) Math.floor(zoomLevel);
         }
 
-        mClusterTask = new ClusterTask(mGoogleMap.getProjection().getVisibleRegion().latLngBounds,
-                mGoogleMap.getCameraPosition().zoom).executeOnExecutor(mExecutor);
+        requestClusters(new ClusterRequest(mGoogleMap.getProjection().getVisibleRegion().latLngBounds,
+                zoomLevel, false), false);
     }
 
-    @NonNull
-    private List<Cluster<T>> getClusters(@NonNull LatLngBounds latLngBounds, float zoomLevel) {
-        List<Cluster<T>> clusters = new ArrayList<>();
-
-        long tileCount = (long) (Math.pow(2, zoomLevel) * 2);
+    private void buildQuadTree(@NonNull List<T> clusterItems,
+                               @Nullable double[] latitudes, @Nullable double[] longitudes) {
+        if (mQuadTreeTask != null) {
+            mQuadTreeTask.cancel(true);
+        }
 
-        double startLatitude = latLngBounds.northeast.latitude;
-        double endLatitude = latLngBounds.southwest.latitude;
+        // The changes of the old items don't apply to the new ones.
+        if (mUpdateTask != null) {
+            mUpdateTask.cancel(true);
+            mUpdateTask = null;
+        }
 
-        double startLongitude = latLngBounds.southwest.longitude;
-        double endLongitude = latLngBounds.northeast.longitude;
+        mQuadTreeTask = new QuadTreeTask(clusterItems, latitudes, longitudes, mSpatialIndexType,
+                mClusteringAlgorithmType, mClusterHierarchyEnabled).executeOnExecutor(mExecutor);
+    }
 
-        double stepLatitude = 180.0 / tileCount;
-        double stepLongitude = 360.0 / tileCount;
+    @NonNull
+    private SpatialIndex<T> createSpatialIndex(@NonNull SpatialIndexType spatialIndexType) {
+        switch (spatialIndexType) {
+            case KD_TREE:
+                return new KdTree<>(ClusterEngine.KD_TREE_NODE_SIZE);
+            case MORTON:
+                return new MortonIndex<>(ClusterEngine.MORTON_INDEX_LEAF_SIZE);
+            default:
+                return new QuadTree<>(ClusterEngine.QUAD_TREE_BUCKET_CAPACITY);
+        }
+    }
 
-        if (startLongitude > endLongitude) { // Longitude +180°/-180° overlap.
-            // [start longitude; 180]
-            getClustersInsideBounds(clusters, startLatitude, endLatitude,
-                    startLongitude, 180.0, stepLatitude, stepLongitude);
-            // [-180; end longitude]
-            getClustersInsideBounds(clusters, startLatitude, endLatitude,
-                    -180.0, endLongitude, stepLatitude, stepLongitude);
-        } else {
-            getClustersInsideBounds(clusters, startLatitude, endLatitude,
-                    startLongitude, endLongitude, stepLatitude, stepLongitude);
+    @NonNull
+    private ClusteringAlgorithm<T> createClusteringAlgorithm(@NonNull ClusteringAlgorithmType clusteringAlgorithmType,
+                                                             @Nullable ClusterHierarchy<T> clusterHierarchy) {
+        switch (clusteringAlgorithmType) {
+            case DISTANCE:
+                return new DistanceClusteringAlgorithm<>();
+            default:
+                return new GridClusteringAlgorithm<>(clusterHierarchy, mClusterEngine.getClusterCache());
         }
+    }
 
-        return clusters;
+    private void cluster() {
+        float zoomLevel = mGoogleMap.getCameraPosition().zoom;
+        mLastClusteringZoom = zoomLevel;
+        requestClusters(new ClusterRequest(mGoogleMap.getProjection().getVisibleRegion().latLngBounds,
+                zoomLevel, true), true);
     }
 
-    private void getClustersInsideBounds(@NonNull List<Cluster<T>> clusters,
-                                         double startLatitude, double endLatitude,
-                                         double startLongitude, double endLongitude,
-                                         double stepLatitude, double stepLongitude) {
-        long startX = (long) ((startLongitude + 180.0) / stepLongitude);
-        long startY = (long) ((90.0 - startLatitude) / stepLatitude);
+    /**
+     * @param interrupt whether to interrupt the running clustering task. Otherwise the task
+     *                  clusters the requested viewport as soon as the running one is done.
+     */
+    private void requestClusters(@NonNull ClusterRequest clusterRequest, boolean interrupt) {
+        mClusterRequest = clusterRequest;
 
-        long endX = (long) ((endLongitude + 180.0) / stepLongitude) + 1;
-        long endY = (long) ((90.0 - endLatitude) / stepLatitude) + 1;
+        // A task that is still waiting in the queue clusters the latest requested viewport when it starts,
+        // so the viewports requested in the meantime are never clustered.
+        if (mClusterTask != null && !mClusterTask.mStarted) {
+            return;
+        }
 
-        for (long tileX = startX; tileX <= endX; tileX++) {
-            for (long tileY = startY; tileY <= endY; tileY++) {
-                double north = 90.0 - tileY * stepLatitude;
-                double west = tileX * stepLongitude - 180.0;
-                double south = north - stepLatitude;
-                double east = west + stepLongitude;
+        if (mClusterTask != null) {
+            if (!interrupt) {
+                return;
+            }
+            mClusterTask.cancel(true);
+        }
 
-                List<T> points = mQuadTree.queryRange(north, west, south, east);
+        mClusterTask = new ClusterTask();
+        mClusterTask.executeOnExecutor(mExecutor);
+    }
 
-                if (points.isEmpty()) {
-                    continue;
-                }
+    private void scheduleItemChange(@NonNull ItemChange<T> itemChange) {
+        synchronized (mPendingItemChanges) {
+            mPendingItemChanges.add(itemChange);
+        }
 
-                if (points.size() >= mMinClusterSize) {
-                    double totalLatitude = 0;
-                    double totalLongitude = 0;
-
-                    for (T point : points) {
-                        totalLatitude += point.getLatitude();
-                        totalLongitude += point.getLongitude();
-                    }
-
-                    double latitude = totalLatitude / points.size();
-                    double longitude = totalLongitude / points.size();
-
-                    clusters.add(new Cluster<>(latitude, longitude,
-                            points, north, west, south, east));
-                } else {
-                    for (T point : points) {
-                        clusters.add(new Cluster<>(point.getLatitude(), point.getLongitude(),
-                                Collections.singletonList(point), north, west, south, east));
-                    }
-                }
-            }
+        if (mUpdateTask == null) {
+            mUpdateTask = new UpdateTask();
+            mUpdateTask.executeOnExecutor(mExecutor);
         }
     }
 
+    @NonNull
+    private List<Cluster<T>> getClusters(@NonNull LatLngBounds latLngBounds, float zoomLevel) {
+        return mClusterEngine.getClusters(latLngBounds.northeast.latitude, latLngBounds.southwest.longitude,
+                latLngBounds.southwest.latitude, latLngBounds.northeast.longitude,
+                zoomLevel + mClusteringZoomOffset, mMinClusterSize, mMaxMarkerCount, mClusteringThreadCount);
+    }
+
     private class QuadTreeTask extends AsyncTask<Void, Void, Void> {
 
         private final List<T> mClusterItems;
-
-        private QuadTreeTask(@NonNull List<T> clusterItems) {
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+        private final SpatialIndexType mSpatialIndexType;
+        private final ClusteringAlgorithmType mClusteringAlgorithmType;
+        private final boolean mClusterHierarchyEnabled;
+
+        private QuadTreeTask(@NonNull List<T> clusterItems,
+                             @Nullable double[] latitudes, @Nullable double[] longitudes,
+                             @NonNull SpatialIndexType spatialIndexType,
+                             @NonNull ClusteringAlgorithmType clusteringAlgorithmType,
+                             boolean clusterHierarchyEnabled) {
             mClusterItems = clusterItems;
+            mLatitudes = latitudes;
+            mLongitudes = longitudes;
+            mSpatialIndexType = spatialIndexType;
+            mClusteringAlgorithmType = clusteringAlgorithmType;
+            mClusterHierarchyEnabled = clusterHierarchyEnabled;
         }
 
         @Override
         protected Void doInBackground(Void... params) {
-            mQuadTree.clear();
-            for (T clusterItem : mClusterItems) {
-                mQuadTree.insert(clusterItem);
+            SpatialIndex<T> spatialIndex = createSpatialIndex(mSpatialIndexType);
+            if (mLatitudes != null) {
+                spatialIndex.insertAll(mClusterItems, mLatitudes, mLongitudes);
+            } else {
+                spatialIndex.insertAll(mClusterItems);
+            }
+            if (isCancelled()) {
+                return null;
             }
+
+            ClusterHierarchy<T> clusterHierarchy = mClusterHierarchyEnabled
+                    && mClusteringAlgorithmType == ClusteringAlgorithmType.GRID
+                    ? new ClusterHierarchy<>(mClusterItems, mLatitudes, mLongitudes) : null;
+            if (isCancelled()) {
+                return null;
+            }
+
+            mClusterEngine.setItems(spatialIndex,
+                    createClusteringAlgorithm(mClusteringAlgorithmType, clusterHierarchy));
             return null;
         }
 
@@ -246,25 +627,86 @@ public class ClusterManager<T extends ClusterItem> implements GoogleMap.OnCamera
         }
     }
 
-    private class ClusterTask extends AsyncTask<Void, Void, List<Cluster<T>>> {
+    private static class ClusterRequest {
 
         private final LatLngBounds mLatLngBounds;
         private final float mZoomLevel;
+        private final boolean mAnimated;
 
-        private ClusterTask(@NonNull LatLngBounds latLngBounds, float zoomLevel) {
+        private ClusterRequest(@NonNull LatLngBounds latLngBounds, float zoomLevel, boolean animated) {
             mLatLngBounds = latLngBounds;
             mZoomLevel = zoomLevel;
+            mAnimated = animated;
         }
+    }
+
+    private class ClusterTask extends AsyncTask<Void, Void, List<Cluster<T>>> {
+
+        private volatile boolean mStarted;
+        private ClusterRequest mRequest;
 
         @Override
         protected List<Cluster<T>> doInBackground(Void... params) {
-            return getClusters(mLatLngBounds, mZoomLevel);
+            // Mark the task as started before reading the request, so a request made after the read
+            // is never missed: it either cancels this task or is clustered when this task is done.
+            mStarted = true;
+            mRequest = mClusterRequest;
+
+            List<Cluster<T>> clusters = getClusters(mRequest.mLatLngBounds, mRequest.mZoomLevel);
+            if (isCancelled()) {
+                return null;
+            }
+
+            mRenderer.prefetchIcons(clusters);
+            return clusters;
         }
 
         @Override
         protected void onPostExecute(@NonNull List<Cluster<T>> clusters) {
-            mRenderer.render(clusters);
+            mRenderer.render(clusters, mRequest.mAnimated);
             mClusterTask = null;
+
+            // The camera has moved while the clusters were computed.
+            if (mClusterRequest != mRequest) {
+                requestClusters(mClusterRequest, false);
+            }
+        }
+    }
+
+    private class UpdateTask extends AsyncTask<Void, Void, List<Cluster<T>>> {
+
+        @Override
+        protected List<Cluster<T>> doInBackground(Void... params) {
+            List<ItemChange<T>> itemChanges;
+            synchronized (mPendingItemChanges) {
+                itemChanges = new ArrayList<>(mPendingItemChanges);
+                mPendingItemChanges.clear();
+            }
+
+            List<Cluster<T>> clusters = mClusterEngine.applyItemChanges(itemChanges, mMaxMarkerCount);
+            if (clusters != null) {
+                mRenderer.prefetchIcons(clusters);
+            }
+            return clusters;
+        }
+
+        @Override
+        protected void onPostExecute(@Nullable List<Cluster<T>> clusters) {
+            mUpdateTask = null;
+
+            // Re-cluster the whole visible region if the changed tiles are unknown.
+            if (clusters != null) {
+                mRenderer.render(clusters, true);
+            } else {
+                cluster();
+            }
+
+            synchronized (mPendingItemChanges) {
+                if (!mPendingItemChanges.isEmpty()) {
+                    mUpdateTask = new UpdateTask();
+                    mUpdateTask.executeOnExecutor(mExecutor);
+                }
+            }
         }
     }
 }
@@ -1,13 +1,9 @@
 package net.sharewire.googlemapsclustering;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ObjectAnimator;
-import android.animation.TypeEvaluator;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.view.Choreographer;
 
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.BitmapDescriptor;
@@ -15,33 +11,75 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static net.sharewire.googlemapsclustering.Preconditions.checkNotNull;
 
-class ClusterRenderer<T extends ClusterItem> implements GoogleMap.OnMarkerClickListener {
+class ClusterRenderer<T extends ClusterItem> implements GoogleMap.OnMarkerClickListener,
+        Choreographer.FrameCallback {
 
     private static final int BACKGROUND_MARKER_Z_INDEX = 0;
 
     private static final int FOREGROUND_MARKER_Z_INDEX = 1;
 
-    private final GoogleMap mGoogleMap;
+    private static final int DEFAULT_MARKER_POOL_SIZE = 100;
+
+    private static final int DEFAULT_MAX_ANIMATED_MARKER_COUNT = 300;
 
-    private final List<Cluster<T>> mClusters = new ArrayList<>();
+    // The time spent on changing markers in a single frame, so that the map keeps responding.
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final GoogleMap mGoogleMap;
 
     private final Map<Cluster<T>, Marker> mMarkers = new HashMap<>();
 
-    private IconGenerator<T> mIconGenerator;
+    private final MarkerPool mMarkerPool;
+
+    private final MarkerAnimator mMarkerAnimator;
+
+    private final Choreographer mChoreographer;
+
+    private final Queue<MarkerOperation<T>> mPendingOperations = new ArrayDeque<>();
+
+    private boolean mFrameCallbackPosted;
+
+    private int mMaxAnimatedMarkerCount = DEFAULT_MAX_ANIMATED_MARKER_COUNT;
+
+    // Whether the changes of the markers that are being rendered are animated.
+    private boolean mAnimateMarkers;
+
+    private volatile IconGenerator<T> mIconGenerator;
 
     private ClusterManager.Callbacks<T> mCallbacks;
 
     ClusterRenderer(@NonNull Context context, @NonNull GoogleMap googleMap) {
+        this(googleMap, Choreographer.getInstance(), new DefaultIconGenerator<T>(context));
+    }
+
+    ClusterRenderer(@NonNull GoogleMap googleMap, @NonNull Choreographer choreographer,
+                    @NonNull IconGenerator<T> iconGenerator) {
         mGoogleMap = googleMap;
         mGoogleMap.setOnMarkerClickListener(this);
-        mIconGenerator = new DefaultIconGenerator<>(context);
+        mChoreographer = choreographer;
+        mMarkerPool = new MarkerPool(googleMap, DEFAULT_MARKER_POOL_SIZE);
+        mMarkerAnimator = new MarkerAnimator(choreographer, new MarkerAnimator.Listener() {
+            @Override
+            public void onMarkerReleased(@NonNull Marker marker) {
+                mMarkerPool.release(marker);
+            }
+        });
+        mIconGenerator = iconGenerator;
     }
 
     @Override
@@ -50,14 +88,14 @@ class ClusterRenderer<T extends ClusterItem> implements GoogleMap.OnMarkerClickL
         if (markerTag instanceof Cluster) {
             //noinspection unchecked
             Cluster<T> cluster = (Cluster<T>) marker.getTag();
-            //noinspection ConstantConditions
-            List<T> clusterItems = cluster.getItems();
 
             if (mCallbacks != null) {
-                if (clusterItems.size() > 1) {
+                //noinspection ConstantConditions
+                T clusterItem = getSingleItem(cluster);
+                if (clusterItem == null) {
                     return mCallbacks.onClusterClick(cluster);
                 } else {
-                    return mCallbacks.onClusterItemClick(clusterItems.get(0));
+                    return mCallbacks.onClusterItemClick(clusterItem);
                 }
             }
         }
@@ -73,86 +111,237 @@ class ClusterRenderer<T extends ClusterItem> implements GoogleMap.OnMarkerClickL
         mIconGenerator = iconGenerator;
     }
 
-    void render(@NonNull List<Cluster<T>> clusters) {
+    /**
+     * Prepares the icons of the given clusters if the icon generator supports it.
+     * Unlike the other methods, can be called on any thread.
+     */
+    void prefetchIcons(@NonNull List<Cluster<T>> clusters) {
+        IconGenerator<T> iconGenerator = mIconGenerator;
+        if (iconGenerator instanceof PrefetchingIconGenerator) {
+            //noinspection unchecked
+            ((PrefetchingIconGenerator<T>) iconGenerator).prefetchIcons(clusters);
+        }
+    }
+
+    void setMarkerPoolSize(int markerPoolSize) {
+        mMarkerPool.setMaxSize(markerPoolSize);
+    }
+
+    void setMaxAnimatedMarkerCount(int maxAnimatedMarkerCount) {
+        mMaxAnimatedMarkerCount = maxAnimatedMarkerCount;
+    }
+
+    long getReusedMarkerCount() {
+        return mMarkerPool.getReusedCount();
+    }
+
+    long getCreatedMarkerCount() {
+        return mMarkerPool.getCreatedCount();
+    }
+
+    /**
+     * Replaces the markers of the current clusters with the markers of the given ones. Markers
+     * are changed over several frames, starting from the center of the visible region. The changes
+     * that haven't been made yet by the time the next clusters are rendered are discarded.
+     *
+     * @param animate whether to animate the changes, e.g. <code>false</code> while the camera moves
+     */
+    void render(@NonNull List<Cluster<T>> clusters, boolean animate) {
+        mPendingOperations.clear();
+
         List<Cluster<T>> clustersToAdd = new ArrayList<>();
+        List<Cluster<T>> clustersToUpdate = new ArrayList<>();
         List<Cluster<T>> clustersToRemove = new ArrayList<>();
 
         for (Cluster<T> cluster : clusters) {
-            if (!mMarkers.containsKey(cluster)) {
+            Marker marker = mMarkers.get(cluster);
+            if (marker == null) {
                 clustersToAdd.add(cluster);
+            } else if (!getMarkerCluster(marker).hasSameContent(cluster)) {
+                // The items of the tile have changed, but the marker can stay.
+                clustersToUpdate.add(cluster);
+            } else {
+                // The marker stays as is, but has to refer to the new cluster, whose items are
+                // up to date. The equal key isn't replaced by put, so it's removed first.
+                mMarkers.remove(cluster);
+                mMarkers.put(cluster, marker);
+                marker.setTag(cluster);
             }
         }
 
+        Set<Cluster<T>> clusterSet = new HashSet<>(clusters);
         for (Cluster<T> cluster : mMarkers.keySet()) {
-            if (!clusters.contains(cluster)) {
+            if (!clusterSet.contains(cluster)) {
                 clustersToRemove.add(cluster);
             }
         }
 
-        mClusters.addAll(clustersToAdd);
-        mClusters.removeAll(clustersToRemove);
+        LatLng center = mGoogleMap.getCameraPosition().target;
+        List<MarkerOperation<T>> operations = new ArrayList<>(clustersToAdd.size() + clustersToUpdate.size()
+                + clustersToRemove.size());
 
-        // Remove the old clusters.
+        TileIndex<T> clusterIndex = new TileIndex<>(clusters);
         for (Cluster<T> clusterToRemove : clustersToRemove) {
-            Marker markerToRemove = mMarkers.get(clusterToRemove);
-            markerToRemove.setZIndex(BACKGROUND_MARKER_Z_INDEX);
-
-            Cluster<T> parentCluster = findParentCluster(mClusters, clusterToRemove.getLatitude(),
+            Cluster<T> parentCluster = clusterIndex.find(clusterToRemove.getLatitude(),
                     clusterToRemove.getLongitude());
-            if (parentCluster != null) {
-                animateMarkerToLocation(markerToRemove, new LatLng(parentCluster.getLatitude(),
-                        parentCluster.getLongitude()), true);
-            } else {
-                markerToRemove.remove();
-            }
-
-            mMarkers.remove(clusterToRemove);
+            operations.add(new MarkerOperation<>(MarkerOperation.Type.REMOVE, clusterToRemove,
+                    parentCluster, center));
         }
 
-        // Add the new clusters.
+        TileIndex<T> removedClusterIndex = new TileIndex<>(clustersToRemove);
         for (Cluster<T> clusterToAdd : clustersToAdd) {
-            Marker markerToAdd;
+            Cluster<T> parentCluster = removedClusterIndex.find(clusterToAdd.getLatitude(),
+                    clusterToAdd.getLongitude());
+            operations.add(new MarkerOperation<>(MarkerOperation.Type.ADD, clusterToAdd,
+                    parentCluster, center));
+        }
 
-            BitmapDescriptor markerIcon = getMarkerIcon(clusterToAdd);
-            String markerTitle = getMarkerTitle(clusterToAdd);
-            String markerSnippet = getMarkerSnippet(clusterToAdd);
+        for (Cluster<T> clusterToUpdate : clustersToUpdate) {
+            operations.add(new MarkerOperation<>(MarkerOperation.Type.UPDATE, clusterToUpdate, null, center));
+        }
 
-            Cluster parentCluster = findParentCluster(clustersToRemove, clusterToAdd.getLatitude(),
-                    clusterToAdd.getLongitude());
-            if (parentCluster != null) {
-                markerToAdd = mGoogleMap.addMarker(new MarkerOptions()
-                        .position(new LatLng(parentCluster.getLatitude(), parentCluster.getLongitude()))
-                        .icon(markerIcon)
-                        .title(markerTitle)
-                        .snippet(markerSnippet)
-                        .zIndex(FOREGROUND_MARKER_Z_INDEX));
-                animateMarkerToLocation(markerToAdd,
-                        new LatLng(clusterToAdd.getLatitude(), clusterToAdd.getLongitude()), false);
-            } else {
-                markerToAdd = mGoogleMap.addMarker(new MarkerOptions()
-                        .position(new LatLng(clusterToAdd.getLatitude(), clusterToAdd.getLongitude()))
-                        .icon(markerIcon)
-                        .title(markerTitle)
-                        .snippet(markerSnippet)
-                        .alpha(0.0F)
-                        .zIndex(FOREGROUND_MARKER_Z_INDEX));
-                animateMarkerAppearance(markerToAdd);
+        Collections.sort(operations, new Comparator<MarkerOperation<T>>() {
+            @Override
+            public int compare(MarkerOperation<T> operation1, MarkerOperation<T> operation2) {
+                return Double.compare(operation1.distanceToCenter, operation2.distanceToCenter);
+            }
+        });
+        mPendingOperations.addAll(operations);
+
+        // Animating too many markers at once makes the map stutter.
+        mAnimateMarkers = animate && operations.size() <= mMaxAnimatedMarkerCount;
+
+        if (!mFrameCallbackPosted && !mPendingOperations.isEmpty()) {
+            mChoreographer.postFrameCallback(this);
+            mFrameCallbackPosted = true;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameCallbackPosted = false;
+
+        // Make at least one change per frame, so that rendering always progresses.
+        long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+        do {
+            MarkerOperation<T> operation = mPendingOperations.poll();
+            if (operation == null) {
+                return;
             }
-            markerToAdd.setTag(clusterToAdd);
 
-            mMarkers.put(clusterToAdd, markerToAdd);
+            switch (operation.type) {
+                case ADD:
+                    addMarker(operation.cluster, operation.parentCluster);
+                    break;
+                case UPDATE:
+                    updateMarker(operation.cluster);
+                    break;
+                case REMOVE:
+                    removeMarker(operation.cluster, operation.parentCluster);
+                    break;
+            }
+        } while (System.nanoTime() < deadline);
+
+        if (!mPendingOperations.isEmpty()) {
+            mChoreographer.postFrameCallback(this);
+            mFrameCallbackPosted = true;
+        }
+    }
+
+    private void removeMarker(@NonNull Cluster<T> clusterToRemove, @Nullable Cluster<T> parentCluster) {
+        Marker markerToRemove = mMarkers.remove(clusterToRemove);
+        markerToRemove.setZIndex(BACKGROUND_MARKER_Z_INDEX);
+        markerToRemove.setTag(null);
+
+        if (parentCluster != null && mAnimateMarkers) {
+            mMarkerAnimator.animatePosition(markerToRemove,
+                    clusterToRemove.getLatitude(), clusterToRemove.getLongitude(),
+                    parentCluster.getLatitude(), parentCluster.getLongitude(), true);
+        } else {
+            releaseMarker(markerToRemove);
         }
     }
 
+    private void addMarker(@NonNull Cluster<T> clusterToAdd, @Nullable Cluster<T> parentCluster) {
+        Marker markerToAdd;
+
+        BitmapDescriptor markerIcon = getMarkerIcon(clusterToAdd);
+        String markerTitle = getMarkerTitle(clusterToAdd);
+        String markerSnippet = getMarkerSnippet(clusterToAdd);
+
+        if (!mAnimateMarkers) {
+            markerToAdd = mMarkerPool.obtain(new MarkerOptions()
+                    .position(new LatLng(clusterToAdd.getLatitude(), clusterToAdd.getLongitude()))
+                    .icon(markerIcon)
+                    .title(markerTitle)
+                    .snippet(markerSnippet)
+                    .zIndex(FOREGROUND_MARKER_Z_INDEX));
+        } else if (parentCluster != null) {
+            markerToAdd = mMarkerPool.obtain(new MarkerOptions()
+                    .position(new LatLng(parentCluster.getLatitude(), parentCluster.getLongitude()))
+                    .icon(markerIcon)
+                    .title(markerTitle)
+                    .snippet(markerSnippet)
+                    .zIndex(FOREGROUND_MARKER_Z_INDEX));
+            mMarkerAnimator.animatePosition(markerToAdd,
+                    parentCluster.getLatitude(), parentCluster.getLongitude(),
+                    clusterToAdd.getLatitude(), clusterToAdd.getLongitude(), false);
+        } else {
+            markerToAdd = mMarkerPool.obtain(new MarkerOptions()
+                    .position(new LatLng(clusterToAdd.getLatitude(), clusterToAdd.getLongitude()))
+                    .icon(markerIcon)
+                    .title(markerTitle)
+                    .snippet(markerSnippet)
+                    .alpha(0.0F)
+                    .zIndex(FOREGROUND_MARKER_Z_INDEX));
+            mMarkerAnimator.animateAppearance(markerToAdd);
+        }
+        markerToAdd.setTag(clusterToAdd);
+
+        mMarkers.put(clusterToAdd, markerToAdd);
+    }
+
+    private void updateMarker(@NonNull Cluster<T> clusterToUpdate) {
+        // The rendered cluster is equal to the updated one, so it has to be replaced explicitly.
+        Marker markerToUpdate = mMarkers.remove(clusterToUpdate);
+        Cluster<T> renderedCluster = getMarkerCluster(markerToUpdate);
+
+        // The icon, the title and the snippet of a single item depend on the item.
+        if (renderedCluster.getItemCount() != clusterToUpdate.getItemCount()
+                || clusterToUpdate.getItemCount() == 1) {
+            markerToUpdate.setIcon(getMarkerIcon(clusterToUpdate));
+            markerToUpdate.setTitle(getMarkerTitle(clusterToUpdate));
+            markerToUpdate.setSnippet(getMarkerSnippet(clusterToUpdate));
+        }
+
+        if (mAnimateMarkers) {
+            mMarkerAnimator.animatePosition(markerToUpdate,
+                    renderedCluster.getLatitude(), renderedCluster.getLongitude(),
+                    clusterToUpdate.getLatitude(), clusterToUpdate.getLongitude(), false);
+        } else {
+            mMarkerAnimator.stop(markerToUpdate);
+            markerToUpdate.setPosition(new LatLng(clusterToUpdate.getLatitude(), clusterToUpdate.getLongitude()));
+        }
+        markerToUpdate.setTag(clusterToUpdate);
+
+        mMarkers.put(clusterToUpdate, markerToUpdate);
+    }
+
+    @NonNull
+    private Cluster<T> getMarkerCluster(@NonNull Marker marker) {
+        //noinspection unchecked
+        return (Cluster<T>) checkNotNull(marker.getTag());
+    }
+
     @NonNull
     private BitmapDescriptor getMarkerIcon(@NonNull Cluster<T> cluster) {
         BitmapDescriptor clusterIcon;
 
-        List<T> clusterItems = cluster.getItems();
-        if (clusterItems.size() > 1) {
+        T clusterItem = getSingleItem(cluster);
+        if (clusterItem == null) {
             clusterIcon = mIconGenerator.getClusterIcon(cluster);
         } else {
-            clusterIcon = mIconGenerator.getClusterItemIcon(clusterItems.get(0));
+            clusterIcon = mIconGenerator.getClusterItemIcon(clusterItem);
         }
 
         return checkNotNull(clusterIcon);
@@ -160,63 +349,98 @@ class ClusterRenderer<T extends ClusterItem> implements GoogleMap.OnMarkerClickL
 
     @Nullable
     private String getMarkerTitle(@NonNull Cluster<T> cluster) {
-        List<T> clusterItems = cluster.getItems();
-        if (clusterItems.size() > 1) {
-            return null;
-        } else {
-            return clusterItems.get(0).getTitle();
-        }
+        T clusterItem = getSingleItem(cluster);
+        return clusterItem != null ? clusterItem.getTitle() : null;
     }
 
     @Nullable
     private String getMarkerSnippet(@NonNull Cluster<T> cluster) {
-        List<T> clusterItems = cluster.getItems();
-        if (clusterItems.size() > 1) {
-            return null;
-        } else {
-            return clusterItems.get(0).getSnippet();
-        }
+        T clusterItem = getSingleItem(cluster);
+        return clusterItem != null ? clusterItem.getSnippet() : null;
     }
 
+    /**
+     * Returns the item of a cluster made of a single item, or <code>null</code> if the cluster
+     * has several items or its items have changed since it has been made.
+     */
     @Nullable
-    private Cluster<T> findParentCluster(@NonNull List<Cluster<T>> clusters,
-                                         double latitude, double longitude) {
-        for (Cluster<T> cluster : clusters) {
-            if (cluster.contains(latitude, longitude)) {
-                return cluster;
-            }
+    private T getSingleItem(@NonNull Cluster<T> cluster) {
+        if (cluster.getItemCount() > 1) {
+            return null;
         }
+        List<T> clusterItems = cluster.getItems();
+        return clusterItems.isEmpty() ? null : clusterItems.get(0);
+    }
 
-        return null;
+    private void releaseMarker(@NonNull Marker marker) {
+        mMarkerAnimator.stop(marker);
+        mMarkerPool.release(marker);
     }
 
-    private void animateMarkerToLocation(@NonNull final Marker marker, @NonNull LatLng targetLocation,
-                                         final boolean removeAfter) {
-        ObjectAnimator objectAnimator = ObjectAnimator.ofObject(marker, "position",
-                new LatLngTypeEvaluator(), targetLocation);
-        objectAnimator.setInterpolator(new FastOutSlowInInterpolator());
-        objectAnimator.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (removeAfter) {
-                    marker.remove();
+    /**
+     * Finds the cluster containing a location by looking up the tile of the location
+     * instead of checking every cluster.
+     */
+    private static class TileIndex<T extends ClusterItem> {
+
+        // Clusters can be made of tiles of different grids if rendering has been superseded halfway.
+        private final Map<Long, TileGrid> mTileGrids = new HashMap<>();
+
+        private final Map<Long, Map<Long, Cluster<T>>> mClusters = new HashMap<>();
+
+        private TileIndex(@NonNull Collection<Cluster<T>> clusters) {
+            for (Cluster<T> cluster : clusters) {
+                TileGrid tileGrid = cluster.getTileGrid();
+                Map<Long, Cluster<T>> gridClusters = mClusters.get(tileGrid.getTileCount());
+                if (gridClusters == null) {
+                    gridClusters = new HashMap<>();
+                    mClusters.put(tileGrid.getTileCount(), gridClusters);
+                    mTileGrids.put(tileGrid.getTileCount(), tileGrid);
+                }
+
+                // Several clusters can be made of the same tile, any of them is enough.
+                if (!gridClusters.containsKey(cluster.getTileKey())) {
+                    gridClusters.put(cluster.getTileKey(), cluster);
                 }
             }
-        });
-        objectAnimator.start();
-    }
+        }
 
-    private void animateMarkerAppearance(@NonNull Marker marker) {
-        ObjectAnimator.ofFloat(marker, "alpha", 1.0F).start();
+        @Nullable
+        private Cluster<T> find(double latitude, double longitude) {
+            for (TileGrid tileGrid : mTileGrids.values()) {
+                long tileKey = TileGrid.getTileKey(tileGrid.getTileX(longitude), tileGrid.getTileY(latitude));
+                Cluster<T> cluster = mClusters.get(tileGrid.getTileCount()).get(tileKey);
+                if (cluster != null && cluster.contains(latitude, longitude)) {
+                    return cluster;
+                }
+            }
+            return null;
+        }
     }
 
-    private static class LatLngTypeEvaluator implements TypeEvaluator<LatLng> {
+    private static class MarkerOperation<T extends ClusterItem> {
 
-        @Override
-        public LatLng evaluate(float fraction, LatLng startValue, LatLng endValue) {
-            double latitude = (endValue.latitude - startValue.latitude) * fraction + startValue.latitude;
-            double longitude = (endValue.longitude - startValue.longitude) * fraction + startValue.longitude;
-            return new LatLng(latitude, longitude);
+        private enum Type {
+            ADD, UPDATE, REMOVE
+        }
+
+        private final Type type;
+        private final Cluster<T> cluster;
+        private final Cluster<T> parentCluster;
+        private final double distanceToCenter;
+
+        private MarkerOperation(@NonNull Type type, @NonNull Cluster<T> cluster,
+                                @Nullable Cluster<T> parentCluster, @NonNull LatLng center) {
+            this.type = type;
+            this.cluster = cluster;
+            this.parentCluster = parentCluster;
+
+            double latitudeDistance = cluster.getLatitude() - center.latitude;
+            double longitudeDistance = Math.abs(cluster.getLongitude() - center.longitude);
+            if (longitudeDistance > 180.0) { // Longitude +180°/-180° overlap.
+                longitudeDistance = 360.0 - longitudeDistance;
+            }
+            this.distanceToCenter = latitudeDistance * latitudeDistance + longitudeDistance * longitudeDistance;
         }
     }
 }
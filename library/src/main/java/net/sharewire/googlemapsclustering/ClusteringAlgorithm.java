@@ -0,0 +1,39 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Groups the items of a spatial index inside a region of the map into clusters.
+ * An algorithm may keep the clusters of the last clustered region to speed up
+ * clustering of the next one, so an instance serves a single set of items
+ * and is used from a single thread.
+ */
+interface ClusteringAlgorithm<T extends ClusterItem> {
+
+    /**
+     * Returns the clusters inside the given region. If the west longitude is greater than
+     * the east one, the region crosses the 180th meridian. Every cluster is assigned a tile
+     * of a grid which identifies it among the clusters of the following regions.
+     *
+     * @param minClusterSize the minimum number of items in a cluster, smaller groups
+     *                       are represented by clusters of single items
+     * @param threadCount    the number of threads the algorithm may use
+     */
+    @NonNull
+    List<Cluster<T>> getClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                 double north, double west, double south, double east,
+                                 float zoomLevel, int minClusterSize, int threadCount);
+
+    /**
+     * Called after the given changes have been applied to the spatial index.
+     *
+     * @return the updated clusters of the last clustered region, or <code>null</code>
+     * if the region has to be clustered again
+     */
+    @Nullable
+    List<Cluster<T>> updateClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                    @NonNull List<ItemChange<T>> itemChanges);
+}
@@ -1,45 +1,53 @@
 package net.sharewire.googlemapsclustering;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
 import android.support.annotation.NonNull;
-import android.util.SparseArray;
-import android.util.TypedValue;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.widget.TextView;
 
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 
+import java.util.List;
+
 import static net.sharewire.googlemapsclustering.Preconditions.checkNotNull;
 
 /**
  * The implementation of {@link IconGenerator} that generates icons with the default style
  * and caches them for subsequent use. To customize the style of generated icons use
- * {@link DefaultIconGenerator#setIconStyle(IconStyle)}.
+ * {@link DefaultIconGenerator#setIconStyle(IconStyle)}. Icons are generated in advance
+ * on a background thread, see {@link PrefetchingIconGenerator}.
  */
-public class DefaultIconGenerator<T extends ClusterItem> implements IconGenerator<T> {
+public class DefaultIconGenerator<T extends ClusterItem> implements PrefetchingIconGenerator<T> {
 
     private static final int[] CLUSTER_ICON_BUCKETS = {10, 20, 50, 100, 500, 1000, 5000, 10000, 20000};
 
     private final Context mContext;
 
-    private IconStyle mIconStyle;
+    private volatile IconStyle mIconStyle;
+
+    private volatile BitmapDescriptor mClusterItemIcon;
 
-    private BitmapDescriptor mClusterItemIcon;
+    private final IconCache mIconCache;
 
-    private final SparseArray<BitmapDescriptor> mClusterIcons = new SparseArray<>();
+    private final ClusterIconPainter mClusterIconPainter;
 
     /**
-     * Creates an icon generator with the default icon style.
+     * Creates an icon generator with the default icon style
+     * that caches icons in {@link IconCache#getDefault()}.
      */
     public DefaultIconGenerator(@NonNull Context context) {
+        this(context, IconCache.getDefault());
+    }
+
+    /**
+     * Creates an icon generator with the default icon style that caches icons in the given cache.
+     *
+     * @param iconCache the cache of generated icons, can be shared with other icon generators
+     */
+    public DefaultIconGenerator(@NonNull Context context, @NonNull IconCache iconCache) {
         mContext = checkNotNull(context);
+        mIconCache = checkNotNull(iconCache);
+        mClusterIconPainter = new ClusterIconPainter(context);
         setIconStyle(createDefaultIconStyle());
     }
 
@@ -50,16 +58,19 @@ public class DefaultIconGenerator<T extends ClusterItem> implements IconGenerato
      */
     public void setIconStyle(@NonNull IconStyle iconStyle) {
         mIconStyle = checkNotNull(iconStyle);
+        mClusterItemIcon = null;
     }
 
     @NonNull
     public BitmapDescriptor getClusterIcon(@NonNull Cluster<T> cluster) {
-        int clusterBucket = getClusterIconBucket(cluster);
-        BitmapDescriptor clusterIcon = mClusterIcons.get(clusterBucket);
+        IconStyle iconStyle = mIconStyle;
+        ClusterIconKey clusterIconKey = new ClusterIconKey(iconStyle, getClusterIconBucket(cluster));
+        BitmapDescriptor clusterIcon = mIconCache.get(clusterIconKey);
 
         if (clusterIcon == null) {
-            clusterIcon = createClusterIcon(clusterBucket);
-            mClusterIcons.put(clusterBucket, clusterIcon);
+            Bitmap iconBitmap = createClusterIcon(iconStyle, clusterIconKey.bucket);
+            clusterIcon = BitmapDescriptorFactory.fromBitmap(iconBitmap);
+            mIconCache.put(clusterIconKey, clusterIcon, iconBitmap.getByteCount());
         }
 
         return clusterIcon;
@@ -74,44 +85,25 @@ public class DefaultIconGenerator<T extends ClusterItem> implements IconGenerato
         return mClusterItemIcon;
     }
 
-    @NonNull
-    private IconStyle createDefaultIconStyle() {
-        return new IconStyle.Builder(mContext).build();
+    @Override
+    public void prefetchIcons(@NonNull List<Cluster<T>> clusters) {
+        for (Cluster<T> cluster : clusters) {
+            if (cluster.getItemCount() > 1 || cluster.getItems().isEmpty()) {
+                getClusterIcon(cluster);
+            } else {
+                getClusterItemIcon(cluster.getItems().get(0));
+            }
+        }
     }
 
     @NonNull
-    private BitmapDescriptor createClusterIcon(int clusterBucket) {
-        @SuppressLint("InflateParams")
-        TextView clusterIconView = (TextView) LayoutInflater.from(mContext)
-                .inflate(R.layout.map_cluster_icon, null);
-        clusterIconView.setBackground(createClusterBackground());
-        clusterIconView.setTextColor(mIconStyle.getClusterTextColor());
-        clusterIconView.setTextSize(TypedValue.COMPLEX_UNIT_PX,
-                mIconStyle.getClusterTextSize());
-
-        clusterIconView.setText(getClusterIconText(clusterBucket));
-
-        clusterIconView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
-        clusterIconView.layout(0, 0, clusterIconView.getMeasuredWidth(),
-                clusterIconView.getMeasuredHeight());
-
-        Bitmap iconBitmap = Bitmap.createBitmap(clusterIconView.getMeasuredWidth(),
-                clusterIconView.getMeasuredHeight(), Bitmap.Config.ARGB_8888);
-
-        Canvas canvas = new Canvas(iconBitmap);
-        clusterIconView.draw(canvas);
-
-        return BitmapDescriptorFactory.fromBitmap(iconBitmap);
+    private IconStyle createDefaultIconStyle() {
+        return new IconStyle.Builder(mContext).build();
     }
 
     @NonNull
-    private Drawable createClusterBackground() {
-        GradientDrawable gradientDrawable = new GradientDrawable();
-        gradientDrawable.setShape(GradientDrawable.OVAL);
-        gradientDrawable.setColor(mIconStyle.getClusterBackgroundColor());
-        gradientDrawable.setStroke(mIconStyle.getClusterStrokeWidth(),
-                mIconStyle.getClusterStrokeColor());
-        return gradientDrawable;
+    private Bitmap createClusterIcon(@NonNull IconStyle iconStyle, int clusterBucket) {
+        return mClusterIconPainter.draw(iconStyle, getClusterIconText(clusterBucket));
     }
 
     @NonNull
@@ -120,7 +112,7 @@ public class DefaultIconGenerator<T extends ClusterItem> implements IconGenerato
     }
 
     private int getClusterIconBucket(@NonNull Cluster<T> cluster) {
-        int itemCount = cluster.getItems().size();
+        int itemCount = cluster.getItemCount();
         if (itemCount <= CLUSTER_ICON_BUCKETS[0]) {
             return itemCount;
         }
@@ -139,4 +131,28 @@ public class DefaultIconGenerator<T extends ClusterItem> implements IconGenerato
         return (clusterIconBucket < CLUSTER_ICON_BUCKETS[0]) ?
                 String.valueOf(clusterIconBucket) : String.valueOf(clusterIconBucket) + "+";
     }
+
+    private static class ClusterIconKey {
+
+        private final IconStyle iconStyle;
+        private final int bucket;
+
+        private ClusterIconKey(@NonNull IconStyle iconStyle, int bucket) {
+            this.iconStyle = iconStyle;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ClusterIconKey that = (ClusterIconKey) o;
+            return bucket == that.bucket && iconStyle.equals(that.iconStyle);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * iconStyle.hashCode() + bucket;
+        }
+    }
 }
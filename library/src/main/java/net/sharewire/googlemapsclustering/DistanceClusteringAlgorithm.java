@@ -0,0 +1,132 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Clusters the items greedily by the distance between them, so that groups of items
+ * aren't split by tile boundaries. Takes the visible items one by one, and every item
+ * that isn't clustered yet starts a new cluster with all the unclustered items around it
+ * within the cluster distance, which is looked up in the spatial index.
+ * <p>
+ * The cluster distance is the size of a tile of the grid of the next zoom level on the screen,
+ * i.e. half the size of the tiles used by {@link GridClusteringAlgorithm}. The clusters
+ * are identified by the tiles of that grid containing the items they start from:
+ * the items that start clusters are farther from each other than the cluster distance,
+ * so no two of them are in the same tile.
+ */
+class DistanceClusteringAlgorithm<T extends ClusterItem> implements ClusteringAlgorithm<T> {
+
+    // The number of items starting clusters between the checks whether clustering has been interrupted.
+    private static final int INTERRUPT_CHECK_INTERVAL = 256;
+
+    @NonNull
+    @Override
+    public List<Cluster<T>> getClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                        double north, double west, double south, double east,
+                                        float zoomLevel, int minClusterSize, int threadCount) {
+        TileGrid grid = new TileGrid(zoomLevel + 1);
+        double distanceLongitude = 360.0 / grid.getTileCount();
+
+        List<T> visibleItems = queryRange(spatialIndex, north, west, south, east);
+
+        // Take the items in an order that doesn't depend on the region,
+        // so that the clusters don't change when the region moves.
+        Collections.sort(visibleItems, new Comparator<T>() {
+            @Override
+            public int compare(T first, T second) {
+                int result = Double.compare(second.getLatitude(), first.getLatitude());
+                return result != 0 ? result : Double.compare(first.getLongitude(), second.getLongitude());
+            }
+        });
+
+        Set<T> clusteredItems = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+        List<Cluster<T>> clusters = new ArrayList<>();
+        int seedCount = 0;
+
+        for (T item : visibleItems) {
+            if (clusteredItems.contains(item)) {
+                continue;
+            }
+
+            if (seedCount++ % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+                return clusters;
+            }
+
+            List<T> clusterItems = new ArrayList<>();
+            double latitudeSum = 0;
+            double longitudeSum = 0;
+
+            List<T> nearbyItems = queryRange(spatialIndex,
+                    grid.offsetLatitude(item.getLatitude(), -1.0),
+                    normalizeLongitude(item.getLongitude() - distanceLongitude),
+                    grid.offsetLatitude(item.getLatitude(), 1.0),
+                    normalizeLongitude(item.getLongitude() + distanceLongitude));
+            for (T nearbyItem : nearbyItems) {
+                if (clusteredItems.add(nearbyItem)) {
+                    clusterItems.add(nearbyItem);
+                    latitudeSum += nearbyItem.getLatitude();
+                    // Keep the average longitude on the side of the item that starts the cluster.
+                    longitudeSum += item.getLongitude()
+                            + normalizeLongitude(nearbyItem.getLongitude() - item.getLongitude());
+                }
+            }
+
+            long tileX = grid.getTileX(item.getLongitude());
+            long tileY = grid.getTileY(item.getLatitude());
+
+            if (clusterItems.size() >= minClusterSize) {
+                clusters.add(new Cluster<>(latitudeSum / clusterItems.size(),
+                        normalizeLongitude(longitudeSum / clusterItems.size()),
+                        clusterItems, grid, tileX, tileY));
+            } else {
+                for (T clusterItem : clusterItems) {
+                    clusters.add(new Cluster<>(clusterItem, grid,
+                            grid.getTileX(clusterItem.getLongitude()), grid.getTileY(clusterItem.getLatitude())));
+                }
+            }
+        }
+
+        return clusters;
+    }
+
+    /**
+     * Always clusters the region again, since any change can affect the neighbouring clusters.
+     */
+    @Nullable
+    @Override
+    public List<Cluster<T>> updateClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                           @NonNull List<ItemChange<T>> itemChanges) {
+        return null;
+    }
+
+    @NonNull
+    private static <T extends ClusterItem> List<T> queryRange(@NonNull SpatialIndex<T> spatialIndex,
+                                                              double north, double west,
+                                                              double south, double east) {
+        if (west > east) { // Longitude +180°/-180° overlap.
+            List<T> items = spatialIndex.queryRange(north, west, south, 180.0);
+            items.addAll(spatialIndex.queryRange(north, -180.0, south, east));
+            return items;
+        } else {
+            return spatialIndex.queryRange(north, west, south, east);
+        }
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        if (longitude > 180.0) {
+            return longitude - 360.0;
+        } else if (longitude < -180.0) {
+            return longitude + 360.0;
+        } else {
+            return longitude;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Clusters the items into the tiles of a grid that depends on the zoom level rounded down
+ * to an integer. The items of each tile make up a single cluster at their average position.
+ * Keeps the clusters of the last clustered region, so that only the tiles that
+ * have become visible or whose items have changed have to be clustered.
+ * <p>
+ * The precomputed cluster hierarchy can't be updated, so it's dropped when the items
+ * change for the first time. The tiles of the last region whose items have changed
+ * are re-clustered from the spatial index, and so are the following regions.
+ */
+class GridClusteringAlgorithm<T extends ClusterItem> implements ClusteringAlgorithm<T> {
+
+    private ClusterHierarchy<T> clusterHierarchy;
+
+    private TileClusters<T> tileClusters;
+
+    private final ClusterCache<T> clusterCache;
+
+    /**
+     * @param clusterHierarchy the precomputed clusters of the items, or <code>null</code>
+     *                         to cluster the items of each region when it's requested
+     * @param clusterCache     the cache of the clusters of the tiles, shared by the algorithms
+     *                         of successive sets of items
+     */
+    GridClusteringAlgorithm(@Nullable ClusterHierarchy<T> clusterHierarchy,
+                            @NonNull ClusterCache<T> clusterCache) {
+        this.clusterHierarchy = clusterHierarchy;
+        this.clusterCache = clusterCache;
+    }
+
+    @NonNull
+    @Override
+    public List<Cluster<T>> getClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                        double north, double west, double south, double east,
+                                        float zoomLevel, int minClusterSize, int threadCount) {
+        if (clusterHierarchy != null && clusterHierarchy.hasZoomLevel(zoomLevel)) {
+            List<Cluster<T>> clusters = new ArrayList<>();
+            TileGrid tileGrid = clusterHierarchy.getTileGrid(zoomLevel);
+            TileClusters<T> tileClusters = new TileClusters<>(tileGrid, minClusterSize,
+                    clusterCache.isEnabled() ? clusterCache : null);
+            for (TileRange tileRange : getTileRanges(tileGrid, north, west, south, east)) {
+                int start = clusters.size();
+                clusterHierarchy.getClustersInsideTiles(clusters, zoomLevel, tileRange, minClusterSize);
+                tileClusters.addClusters(tileRange, clusters.subList(start, clusters.size()));
+            }
+
+            // Keep the clusters to update only the changed tiles once the hierarchy is dropped,
+            // unless clustering has been interrupted halfway.
+            if (!Thread.currentThread().isInterrupted()) {
+                this.tileClusters = tileClusters;
+            }
+            return clusters;
+        }
+
+        // The tiles only change at integer zoom levels, the same as the levels of the hierarchy,
+        // so the clusters can be reused and cached while the camera zooms between them.
+        TileGrid tileGrid = new TileGrid((float) Math.floor(zoomLevel));
+        List<TileRange> tileRanges = getTileRanges(tileGrid, north, west, south, east);
+        TileClusters<T> tileClusters;
+
+        // When the zoom level doesn't change, only cluster the tiles that have become visible.
+        if (this.tileClusters != null && this.tileClusters.isReusable(tileGrid, minClusterSize)) {
+            tileClusters = this.tileClusters.moveTo(spatialIndex, tileRanges, threadCount);
+        } else {
+            tileClusters = new TileClusters<>(tileGrid, minClusterSize,
+                    clusterCache.isEnabled() ? clusterCache : null);
+            for (TileRange tileRange : tileRanges) {
+                tileClusters.addTiles(spatialIndex, tileRange, threadCount);
+            }
+        }
+
+        // Keep the clusters for updating only if clustering hasn't been interrupted halfway.
+        if (!Thread.currentThread().isInterrupted()) {
+            this.tileClusters = tileClusters;
+        }
+        return tileClusters.getClusters();
+    }
+
+    /**
+     * Re-clusters the tiles where the items have changed. Drops the cluster hierarchy,
+     * since the following regions have to be clustered from the updated spatial index.
+     */
+    @Nullable
+    @Override
+    public List<Cluster<T>> updateClusters(@NonNull SpatialIndex<T> spatialIndex,
+                                           @NonNull List<ItemChange<T>> itemChanges) {
+        TileGrid tileGrid = tileClusters != null ? tileClusters.getGrid() : null;
+        Set<Long> changedTiles = new HashSet<>();
+
+        for (ItemChange<T> itemChange : itemChanges) {
+            T clusterItem = itemChange.clusterItem;
+
+            if (itemChange.type == ItemChange.Type.UPDATE) {
+                clusterCache.invalidate(itemChange.previousLatitude, itemChange.previousLongitude);
+                if (tileGrid != null) {
+                    changedTiles.add(TileGrid.getTileKey(
+                            tileGrid.getTileX(itemChange.previousLongitude),
+                            tileGrid.getTileY(itemChange.previousLatitude)));
+                }
+            }
+
+            clusterCache.invalidate(clusterItem.getLatitude(), clusterItem.getLongitude());
+
+            if (tileGrid != null) {
+                changedTiles.add(TileGrid.getTileKey(tileGrid.getTileX(clusterItem.getLongitude()),
+                        tileGrid.getTileY(clusterItem.getLatitude())));
+            }
+        }
+
+        clusterHierarchy = null;
+
+        if (tileClusters == null) {
+            return null;
+        }
+
+        tileClusters.updateTiles(spatialIndex, changedTiles);
+        return tileClusters.getClusters();
+    }
+
+    @NonNull
+    private static List<TileRange> getTileRanges(@NonNull TileGrid tileGrid,
+                                                 double north, double west, double south, double east) {
+        if (west > east) { // Longitude +180°/-180° overlap.
+            return Arrays.asList(
+                    // [west; 180]
+                    tileGrid.getTileRange(north, west, south, 180.0),
+                    // [-180; east]
+                    tileGrid.getTileRange(north, -180.0, south, east));
+        } else {
+            return Collections.singletonList(tileGrid.getTileRange(north, west, south, east));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+
+import static net.sharewire.googlemapsclustering.Preconditions.checkArgument;
+import static net.sharewire.googlemapsclustering.Preconditions.checkNotNull;
+
+/**
+ * A cache of marker icons limited by the total size of their bitmaps. The least recently
+ * used icons are evicted first. A single cache can be shared by multiple icon generators
+ * and cluster managers, so that identical icons are only generated once. Icons are looked
+ * up by keys that must implement {@link Object#equals(Object)} and {@link Object#hashCode()},
+ * so the key of an icon must include everything the icon depends on, e.g. its style.
+ * This class is thread-safe.
+ */
+public class IconCache {
+
+    private static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static IconCache sDefaultCache;
+
+    private final LruCache<Object, Icon> mIcons;
+
+    /**
+     * Creates a cache limited by the given total size of icon bitmaps.
+     *
+     * @param maxBytes the maximum total size of icon bitmaps in bytes
+     */
+    public IconCache(int maxBytes) {
+        checkArgument(maxBytes > 0);
+        mIcons = new LruCache<Object, Icon>(maxBytes) {
+            @Override
+            protected int sizeOf(Object key, Icon icon) {
+                return icon.byteCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all the instances of {@link DefaultIconGenerator}
+     * that are created without an explicit cache.
+     *
+     * @return the default cache
+     */
+    @NonNull
+    public static synchronized IconCache getDefault() {
+        if (sDefaultCache == null) {
+            sDefaultCache = new IconCache(DEFAULT_MAX_BYTES);
+        }
+        return sDefaultCache;
+    }
+
+    /**
+     * Returns the icon for the given key.
+     *
+     * @param key the key of the icon
+     * @return the icon, or <code>null</code> if it's not cached
+     */
+    @Nullable
+    public BitmapDescriptor get(@NonNull Object key) {
+        Icon icon = mIcons.get(checkNotNull(key));
+        return icon != null ? icon.descriptor : null;
+    }
+
+    /**
+     * Puts the icon for the given key into the cache, evicting the least recently used icons
+     * if the cache is full.
+     *
+     * @param key       the key of the icon
+     * @param icon      the icon
+     * @param byteCount the size of the bitmap of the icon in bytes, see {@link android.graphics.Bitmap#getByteCount()}
+     */
+    public void put(@NonNull Object key, @NonNull BitmapDescriptor icon, int byteCount) {
+        checkArgument(byteCount >= 0);
+        mIcons.put(checkNotNull(key), new Icon(checkNotNull(icon), byteCount));
+    }
+
+    /**
+     * Removes all the icons from the cache.
+     */
+    public void clear() {
+        mIcons.evictAll();
+    }
+
+    /**
+     * Returns the number of icons that have been found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public int getHitCount() {
+        return mIcons.hitCount();
+    }
+
+    /**
+     * Returns the number of icons that haven't been found in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public int getMissCount() {
+        return mIcons.missCount();
+    }
+
+    /**
+     * Returns the share of icons that have been found in the cache.
+     *
+     * @return the hit rate from 0 to 1, or 0 if no icons have been requested
+     */
+    public float getHitRate() {
+        int hitCount = mIcons.hitCount();
+        int requestCount = hitCount + mIcons.missCount();
+        return requestCount > 0 ? (float) hitCount / requestCount : 0.0F;
+    }
+
+    /**
+     * Returns the total size of the bitmaps of the cached icons.
+     *
+     * @return the size in bytes
+     */
+    public int getResidentBytes() {
+        return mIcons.size();
+    }
+
+    /**
+     * Returns the maximum total size of the bitmaps of the cached icons.
+     *
+     * @return the size in bytes
+     */
+    public int getMaxBytes() {
+        return mIcons.maxSize();
+    }
+
+    private static class Icon {
+
+        private final BitmapDescriptor descriptor;
+        private final int byteCount;
+
+        private Icon(@NonNull BitmapDescriptor descriptor, int byteCount) {
+            this.descriptor = descriptor;
+            this.byteCount = byteCount;
+        }
+    }
+}
@@ -6,8 +6,8 @@ import com.google.android.gms.maps.model.BitmapDescriptor;
 
 /**
  * Generates icons for clusters and cluster items. Note that its implementations
- * should cache generated icons for subsequent use. For the example implementation see
- * {@link DefaultIconGenerator}.
+ * should cache generated icons for subsequent use, e.g. using {@link IconCache}.
+ * For the example implementation see {@link DefaultIconGenerator}.
  */
 public interface IconGenerator<T extends ClusterItem> {
     /**
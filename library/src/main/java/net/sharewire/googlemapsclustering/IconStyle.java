@@ -88,6 +88,30 @@ public class IconStyle {
         return clusterIconResId;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IconStyle iconStyle = (IconStyle) o;
+        return clusterBackgroundColor == iconStyle.clusterBackgroundColor &&
+                clusterTextColor == iconStyle.clusterTextColor &&
+                clusterStrokeColor == iconStyle.clusterStrokeColor &&
+                clusterStrokeWidth == iconStyle.clusterStrokeWidth &&
+                clusterTextSize == iconStyle.clusterTextSize &&
+                clusterIconResId == iconStyle.clusterIconResId;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = clusterBackgroundColor;
+        result = 31 * result + clusterTextColor;
+        result = 31 * result + clusterStrokeColor;
+        result = 31 * result + clusterStrokeWidth;
+        result = 31 * result + clusterTextSize;
+        result = 31 * result + clusterIconResId;
+        return result;
+    }
+
     /**
      * The builder for {@link IconStyle}. Allows to customize different style attributes.
      * If a style attribute is not set explicitly, the default value will be used.
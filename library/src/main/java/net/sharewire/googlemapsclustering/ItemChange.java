@@ -0,0 +1,26 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A change of the clustered items that is applied to the spatial index incrementally.
+ */
+class ItemChange<T extends ClusterItem> {
+
+    enum Type {
+        ADD, REMOVE, UPDATE
+    }
+
+    final Type type;
+    final T clusterItem;
+    final double previousLatitude;
+    final double previousLongitude;
+
+    ItemChange(@NonNull Type type, @NonNull T clusterItem,
+               double previousLatitude, double previousLongitude) {
+        this.type = type;
+        this.clusterItem = clusterItem;
+        this.previousLatitude = previousLatitude;
+        this.previousLongitude = previousLongitude;
+    }
+}
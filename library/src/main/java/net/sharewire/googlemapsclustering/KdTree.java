@@ -0,0 +1,292 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A static spatial index that keeps the coordinates of the points in primitive arrays
+ * sorted as an implicit k-d tree. Unlike {@link QuadTree} it doesn't allocate any objects
+ * per node, so its memory footprint is a few dozen bytes per point. Any change
+ * of the points causes the whole tree to be indexed again lazily on the next query.
+ */
+class KdTree<T extends QuadTreePoint> implements SpatialIndex<T> {
+
+    private static final int AXIS_LONGITUDE = 0;
+    private static final int AXIS_LATITUDE = 1;
+
+    private final int nodeSize;
+
+    private final List<T> points = new ArrayList<>();
+
+    // Indices of the points sorted in the k-d order.
+    private int[] ids = new int[0];
+
+    // Longitude and latitude of each point, in the same order as ids.
+    private double[] coordinates = new double[0];
+
+    private boolean indexed = true;
+
+    // Coordinates of the points as they were passed to insertAll, in the same order as points,
+    // or null if they have to be read from the points.
+    private double[] pointLatitudes;
+    private double[] pointLongitudes;
+
+    KdTree(int nodeSize) {
+        this.nodeSize = nodeSize;
+    }
+
+    @Override
+    public synchronized void insert(@NonNull T point) {
+        points.add(point);
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized void insertAll(@NonNull List<T> points) {
+        this.points.addAll(points);
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized void insertAll(@NonNull List<T> points,
+                                       @NonNull double[] latitudes, @NonNull double[] longitudes) {
+        if (!this.points.isEmpty()) {
+            insertAll(points);
+            return;
+        }
+        this.points.addAll(points);
+        pointLatitudes = latitudes;
+        pointLongitudes = longitudes;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized boolean remove(@NonNull T point) {
+        if (!points.remove(point)) {
+            return false;
+        }
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+        return true;
+    }
+
+    @Override
+    public synchronized void relocate(@NonNull T point, double previousLatitude, double previousLongitude) {
+        // The coordinates are read from the points when the tree is indexed.
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @NonNull
+    @Override
+    public List<T> queryRange(double north, double west, double south, double east) {
+        List<T> pointsInRange = new ArrayList<>();
+        visitRange(north, west, south, east, null, pointsInRange);
+        return pointsInRange;
+    }
+
+    @Override
+    public void aggregateRange(double north, double west, double south, double east,
+                               @NonNull PointAggregator<T> aggregator) {
+        visitRange(north, west, south, east, aggregator, null);
+    }
+
+    @Override
+    public synchronized void clear() {
+        points.clear();
+        ids = new int[0];
+        coordinates = new double[0];
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = true;
+    }
+
+    /**
+     * Visits the points inside the range. The points are passed to the aggregator
+     * if it's not <code>null</code>, otherwise they're added to the list.
+     */
+    private void visitRange(double north, double west, double south, double east,
+                            PointAggregator<T> aggregator, List<T> pointsInRange) {
+        index();
+
+        if (ids.length == 0) {
+            return;
+        }
+
+        int[] stack = new int[48];
+        int stackSize = 0;
+
+        stack[stackSize++] = 0;
+        stack[stackSize++] = ids.length - 1;
+        stack[stackSize++] = AXIS_LONGITUDE;
+
+        while (stackSize > 0) {
+            int axis = stack[--stackSize];
+            int right = stack[--stackSize];
+            int left = stack[--stackSize];
+
+            // Scan the leaf node linearly.
+            if (right - left <= nodeSize) {
+                for (int i = left; i <= right; i++) {
+                    if (contains(i, north, west, south, east)) {
+                        visitPoint(i, aggregator, pointsInRange);
+                    }
+                }
+                continue;
+            }
+
+            int middle = (left + right) >> 1;
+            if (contains(middle, north, west, south, east)) {
+                visitPoint(middle, aggregator, pointsInRange);
+            }
+
+            double value = coordinates[2 * middle + axis];
+            boolean visitLeft = axis == AXIS_LONGITUDE ? west <= value : south <= value;
+            boolean visitRight = axis == AXIS_LONGITUDE ? east >= value : north >= value;
+
+            if (stackSize + 6 > stack.length) {
+                int[] newStack = new int[stack.length * 2];
+                System.arraycopy(stack, 0, newStack, 0, stackSize);
+                stack = newStack;
+            }
+
+            if (visitLeft) {
+                stack[stackSize++] = left;
+                stack[stackSize++] = middle - 1;
+                stack[stackSize++] = 1 - axis;
+            }
+            if (visitRight) {
+                stack[stackSize++] = middle + 1;
+                stack[stackSize++] = right;
+                stack[stackSize++] = 1 - axis;
+            }
+        }
+    }
+
+    private void visitPoint(int i, PointAggregator<T> aggregator, List<T> pointsInRange) {
+        T point = points.get(ids[i]);
+        if (aggregator != null) {
+            aggregator.addPoint(point, coordinates[2 * i + AXIS_LATITUDE], coordinates[2 * i + AXIS_LONGITUDE]);
+        } else {
+            pointsInRange.add(point);
+        }
+    }
+
+    // Synchronized, since the tree may be queried from multiple threads at once.
+    private synchronized void index() {
+        if (indexed) {
+            return;
+        }
+
+        int size = points.size();
+        ids = new int[size];
+        coordinates = new double[2 * size];
+
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+            if (pointLatitudes != null) {
+                coordinates[2 * i + AXIS_LONGITUDE] = pointLongitudes[i];
+                coordinates[2 * i + AXIS_LATITUDE] = pointLatitudes[i];
+            } else {
+                T point = points.get(i);
+                coordinates[2 * i + AXIS_LONGITUDE] = point.getLongitude();
+                coordinates[2 * i + AXIS_LATITUDE] = point.getLatitude();
+            }
+        }
+
+        sort(0, size - 1, AXIS_LONGITUDE);
+        indexed = true;
+    }
+
+    private boolean contains(int i, double north, double west, double south, double east) {
+        double longitude = coordinates[2 * i + AXIS_LONGITUDE];
+        double latitude = coordinates[2 * i + AXIS_LATITUDE];
+        return longitude >= west && longitude <= east && latitude <= north && latitude >= south;
+    }
+
+    private void sort(int left, int right, int axis) {
+        if (right - left <= nodeSize) {
+            return;
+        }
+
+        int middle = (left + right) >> 1;
+        select(middle, left, right, axis);
+
+        sort(left, middle - 1, 1 - axis);
+        sort(middle + 1, right, 1 - axis);
+    }
+
+    // Floyd-Rivest selection: puts the k-th smallest value along the axis to the index k,
+    // the smaller ones to the left of it and the bigger ones to the right of it.
+    private void select(int k, int left, int right, int axis) {
+        while (right > left) {
+            if (right - left > 600) {
+                int n = right - left + 1;
+                int m = k - left + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2.0 * z / 3.0);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * (m - n / 2.0 < 0 ? -1 : 1);
+                int newLeft = (int) Math.max(left, Math.floor(k - m * s / n + sd));
+                int newRight = (int) Math.min(right, Math.floor(k + (n - m) * s / n + sd));
+                select(k, newLeft, newRight, axis);
+            }
+
+            double t = coordinates[2 * k + axis];
+            int i = left;
+            int j = right;
+
+            swap(left, k);
+            if (coordinates[2 * right + axis] > t) {
+                swap(left, right);
+            }
+
+            while (i < j) {
+                swap(i, j);
+                i++;
+                j--;
+                while (coordinates[2 * i + axis] < t) {
+                    i++;
+                }
+                while (coordinates[2 * j + axis] > t) {
+                    j--;
+                }
+            }
+
+            if (coordinates[2 * left + axis] == t) {
+                swap(left, j);
+            } else {
+                j++;
+                swap(j, right);
+            }
+
+            if (j <= k) {
+                left = j + 1;
+            }
+            if (k <= j) {
+                right = j - 1;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+
+        double longitude = coordinates[2 * i];
+        coordinates[2 * i] = coordinates[2 * j];
+        coordinates[2 * j] = longitude;
+
+        double latitude = coordinates[2 * i + 1];
+        coordinates[2 * i + 1] = coordinates[2 * j + 1];
+        coordinates[2 * j + 1] = latitude;
+    }
+}
@@ -0,0 +1,188 @@
+package net.sharewire.googlemapsclustering;
+
+import android.animation.TimeInterpolator;
+import android.support.annotation.NonNull;
+import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Animates the position and the opacity of markers. All the animations are stepped together
+ * by a single frame callback, and their state is kept in primitive arrays, so animating
+ * many markers at once doesn't create an animator per marker or objects per frame.
+ * A marker has at most one animation at a time.
+ */
+class MarkerAnimator implements Choreographer.FrameCallback {
+
+    // The same as the default duration of a ValueAnimator.
+    private static final long DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
+    private static final long NOT_STARTED = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int TYPE_POSITION = 0;
+    private static final int TYPE_ALPHA = 1;
+
+    /**
+     * Receives the markers whose animations have ended and have been started
+     * with the flag to release the marker after the animation.
+     */
+    interface Listener {
+
+        void onMarkerReleased(@NonNull Marker marker);
+    }
+
+    private final Choreographer mChoreographer;
+
+    private final TimeInterpolator mInterpolator = new FastOutSlowInInterpolator();
+
+    private final Listener mListener;
+
+    private final Map<Marker, Integer> mAnimationIndices = new HashMap<>();
+
+    private Marker[] mMarkers = new Marker[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private boolean[] mReleaseAfter = new boolean[INITIAL_CAPACITY];
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+    // Start latitude, start longitude, end latitude and end longitude of each animation.
+    private double[] mValues = new double[INITIAL_CAPACITY * 4];
+
+    private int mAnimationCount;
+
+    private boolean mFrameCallbackPosted;
+
+    MarkerAnimator(@NonNull Choreographer choreographer, @NonNull Listener listener) {
+        mChoreographer = choreographer;
+        mListener = listener;
+    }
+
+    /**
+     * Moves the marker from the start to the end position.
+     *
+     * @param releaseAfter whether to pass the marker to the listener after the animation
+     */
+    void animatePosition(@NonNull Marker marker, double startLatitude, double startLongitude,
+                         double endLatitude, double endLongitude, boolean releaseAfter) {
+        int index = startAnimation(marker, TYPE_POSITION, releaseAfter);
+        mValues[index * 4] = startLatitude;
+        mValues[index * 4 + 1] = startLongitude;
+        mValues[index * 4 + 2] = endLatitude;
+        mValues[index * 4 + 3] = endLongitude;
+    }
+
+    /**
+     * Fades the marker in from transparent to opaque.
+     */
+    void animateAppearance(@NonNull Marker marker) {
+        int index = startAnimation(marker, TYPE_ALPHA, false);
+        mValues[index * 4] = 0.0;
+        mValues[index * 4 + 2] = 1.0;
+    }
+
+    /**
+     * Jumps to the end of the animation of the marker, if any, without releasing the marker.
+     */
+    void stop(@NonNull Marker marker) {
+        Integer index = mAnimationIndices.get(marker);
+        if (index != null) {
+            step(index, 1.0F);
+            removeAnimation(index);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameCallbackPosted = false;
+
+        for (int i = mAnimationCount - 1; i >= 0; i--) {
+            if (mStartTimes[i] == NOT_STARTED) {
+                mStartTimes[i] = frameTimeNanos;
+            }
+
+            float fraction = Math.min(1.0F, (float) (frameTimeNanos - mStartTimes[i]) / DURATION_NANOS);
+            step(i, mInterpolator.getInterpolation(fraction));
+
+            if (fraction == 1.0F) {
+                Marker marker = mMarkers[i];
+                boolean releaseAfter = mReleaseAfter[i];
+                removeAnimation(i);
+                if (releaseAfter) {
+                    mListener.onMarkerReleased(marker);
+                }
+            }
+        }
+
+        if (mAnimationCount > 0) {
+            postFrameCallback();
+        }
+    }
+
+    private int startAnimation(@NonNull Marker marker, int type, boolean releaseAfter) {
+        stop(marker);
+
+        if (mAnimationCount == mMarkers.length) {
+            int capacity = mMarkers.length * 2;
+            mMarkers = Arrays.copyOf(mMarkers, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mReleaseAfter = Arrays.copyOf(mReleaseAfter, capacity);
+            mStartTimes = Arrays.copyOf(mStartTimes, capacity);
+            mValues = Arrays.copyOf(mValues, capacity * 4);
+        }
+
+        int index = mAnimationCount++;
+        mMarkers[index] = marker;
+        mTypes[index] = type;
+        mReleaseAfter[index] = releaseAfter;
+        mStartTimes[index] = NOT_STARTED;
+        mAnimationIndices.put(marker, index);
+
+        postFrameCallback();
+        return index;
+    }
+
+    private void step(int index, float fraction) {
+        double[] values = mValues;
+        int offset = index * 4;
+
+        if (mTypes[index] == TYPE_POSITION) {
+            double latitude = values[offset] + (values[offset + 2] - values[offset]) * fraction;
+            double longitude = values[offset + 1] + (values[offset + 3] - values[offset + 1]) * fraction;
+            mMarkers[index].setPosition(new LatLng(latitude, longitude));
+        } else {
+            mMarkers[index].setAlpha((float) (values[offset] + (values[offset + 2] - values[offset]) * fraction));
+        }
+    }
+
+    /**
+     * Removes the animation by moving the last animation in its place.
+     */
+    private void removeAnimation(int index) {
+        mAnimationIndices.remove(mMarkers[index]);
+
+        int lastIndex = --mAnimationCount;
+        if (index != lastIndex) {
+            mMarkers[index] = mMarkers[lastIndex];
+            mTypes[index] = mTypes[lastIndex];
+            mReleaseAfter[index] = mReleaseAfter[lastIndex];
+            mStartTimes[index] = mStartTimes[lastIndex];
+            System.arraycopy(mValues, lastIndex * 4, mValues, index * 4, 4);
+            mAnimationIndices.put(mMarkers[index], index);
+        }
+        mMarkers[lastIndex] = null;
+    }
+
+    private void postFrameCallback() {
+        if (!mFrameCallbackPosted) {
+            mChoreographer.postFrameCallback(this);
+            mFrameCallbackPosted = true;
+        }
+    }
+}
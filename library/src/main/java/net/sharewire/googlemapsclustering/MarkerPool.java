@@ -0,0 +1,88 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps markers that are no longer used hidden on the map, so that they can be reused
+ * for new clusters instead of removing them and adding new ones, which is expensive.
+ */
+class MarkerPool {
+
+    private final GoogleMap mGoogleMap;
+
+    private final List<Marker> mMarkers = new ArrayList<>();
+
+    private int mMaxSize;
+
+    private long mReusedCount;
+
+    private long mCreatedCount;
+
+    MarkerPool(@NonNull GoogleMap googleMap, int maxSize) {
+        mGoogleMap = googleMap;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Sets the maximum number of hidden markers. Markers above the limit are removed from the map.
+     */
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        while (mMarkers.size() > maxSize) {
+            mMarkers.remove(mMarkers.size() - 1).remove();
+        }
+    }
+
+    /**
+     * Returns a marker with the given options, either a hidden one or a new one added to the map.
+     */
+    @NonNull
+    Marker obtain(@NonNull MarkerOptions markerOptions) {
+        if (mMarkers.isEmpty()) {
+            mCreatedCount++;
+            return mGoogleMap.addMarker(markerOptions);
+        }
+
+        Marker marker = mMarkers.remove(mMarkers.size() - 1);
+        marker.setPosition(markerOptions.getPosition());
+        marker.setIcon(markerOptions.getIcon());
+        marker.setTitle(markerOptions.getTitle());
+        marker.setSnippet(markerOptions.getSnippet());
+        marker.setAlpha(markerOptions.getAlpha());
+        marker.setZIndex(markerOptions.getZIndex());
+        marker.setVisible(true);
+        mReusedCount++;
+        return marker;
+    }
+
+    /**
+     * Hides the marker to reuse it later, or removes it from the map if the pool is full.
+     * The marker must not be changed by anything else after that.
+     */
+    void release(@NonNull Marker marker) {
+        if (mMarkers.size() >= mMaxSize) {
+            marker.remove();
+            return;
+        }
+
+        marker.hideInfoWindow();
+        marker.setVisible(false);
+        marker.setTag(null);
+        mMarkers.add(marker);
+    }
+
+    long getReusedCount() {
+        return mReusedCount;
+    }
+
+    long getCreatedCount() {
+        return mCreatedCount;
+    }
+}
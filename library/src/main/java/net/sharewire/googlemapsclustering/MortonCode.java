@@ -0,0 +1,44 @@
+package net.sharewire.googlemapsclustering;
+
+/**
+ * Encodes tile coordinates into Morton codes (Z-order curve) and back. Morton codes
+ * of the tiles that belong to the same parent tile form a contiguous range, and the code
+ * of the parent tile is the code of any of its children shifted right by two bits.
+ */
+final class MortonCode {
+
+    static long encode(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    static int decodeX(long code) {
+        return compact(code);
+    }
+
+    static int decodeY(long code) {
+        return compact(code >>> 1);
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static int compact(long code) {
+        long v = code & 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) v;
+    }
+
+    private MortonCode() {
+    }
+}
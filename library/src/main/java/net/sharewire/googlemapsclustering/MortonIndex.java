@@ -0,0 +1,271 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.sharewire.googlemapsclustering.Preconditions.checkArgument;
+
+/**
+ * A static spatial index that keeps the coordinates of the points in primitive arrays
+ * sorted by the Morton codes (Z-order curve) of the points. The points of any cell
+ * of the implicit quad tree over the codes are stored contiguously, so a query
+ * scans a few ranges of the arrays and only reads the points that it returns.
+ * The prefix sums of the coordinates let it aggregate a cell of any size
+ * in constant time. Like {@link KdTree}, any change of the points causes
+ * the whole index to be built again lazily on the next query.
+ */
+class MortonIndex<T extends QuadTreePoint> implements SpatialIndex<T> {
+
+    // The resolution of the codes, about 40 meters along the equator.
+    private static final int BITS_PER_AXIS = 20;
+    private static final int POINT_INDEX_BITS = Long.SIZE - 1 - 2 * BITS_PER_AXIS;
+    private static final double CELL_COUNT = 1 << BITS_PER_AXIS;
+
+    private final int leafSize;
+
+    private final List<T> points = new ArrayList<>();
+
+    // Morton codes of the points in ascending order.
+    private long[] codes = new long[0];
+
+    // Indices and coordinates of the points, in the same order as codes.
+    private int[] ids = new int[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+
+    // Sums of the coordinates of the points preceding each index.
+    private double[] latitudeSums = new double[1];
+    private double[] longitudeSums = new double[1];
+
+    private boolean indexed = true;
+
+    // Coordinates of the points as they were passed to insertAll, in the same order as points,
+    // or null if they have to be read from the points.
+    private double[] pointLatitudes;
+    private double[] pointLongitudes;
+
+    MortonIndex(int leafSize) {
+        this.leafSize = leafSize;
+    }
+
+    @Override
+    public synchronized void insert(@NonNull T point) {
+        points.add(point);
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized void insertAll(@NonNull List<T> points) {
+        this.points.addAll(points);
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized void insertAll(@NonNull List<T> points,
+                                       @NonNull double[] latitudes, @NonNull double[] longitudes) {
+        if (!this.points.isEmpty()) {
+            insertAll(points);
+            return;
+        }
+        this.points.addAll(points);
+        pointLatitudes = latitudes;
+        pointLongitudes = longitudes;
+        indexed = false;
+    }
+
+    @Override
+    public synchronized boolean remove(@NonNull T point) {
+        if (!points.remove(point)) {
+            return false;
+        }
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+        return true;
+    }
+
+    @Override
+    public synchronized void relocate(@NonNull T point, double previousLatitude, double previousLongitude) {
+        // The coordinates are read from the points when the index is built.
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = false;
+    }
+
+    @NonNull
+    @Override
+    public List<T> queryRange(double north, double west, double south, double east) {
+        index();
+
+        List<T> pointsInRange = new ArrayList<>();
+        aggregateCell(0, 0, 0, 0, codes.length, north, west, south, east, null, pointsInRange);
+        return pointsInRange;
+    }
+
+    @Override
+    public void aggregateRange(double north, double west, double south, double east,
+                               @NonNull PointAggregator<T> aggregator) {
+        index();
+
+        aggregateCell(0, 0, 0, 0, codes.length, north, west, south, east, aggregator, null);
+    }
+
+    @Override
+    public synchronized void clear() {
+        points.clear();
+        codes = new long[0];
+        ids = new int[0];
+        latitudes = new double[0];
+        longitudes = new double[0];
+        latitudeSums = new double[1];
+        longitudeSums = new double[1];
+        pointLatitudes = null;
+        pointLongitudes = null;
+        indexed = true;
+    }
+
+    /**
+     * Visits the points of a cell stored at the indices [from; to) that are inside the range.
+     * The points are passed to the aggregator if it's not <code>null</code>,
+     * otherwise they're added to the list.
+     */
+    private void aggregateCell(int level, int cellX, int cellY, int from, int to,
+                               double north, double west, double south, double east,
+                               PointAggregator<T> aggregator, List<T> pointsInRange) {
+        if (from == to) {
+            return;
+        }
+
+        int shift = BITS_PER_AXIS - level;
+        double cellNorth = getLatitude(cellY << shift);
+        double cellWest = getLongitude(cellX << shift);
+        double cellSouth = getLatitude((cellY + 1) << shift);
+        double cellEast = getLongitude((cellX + 1) << shift);
+
+        if (cellWest > east || cellEast < west || cellNorth < south || cellSouth > north) {
+            return;
+        }
+
+        boolean inside = cellWest >= west && cellEast <= east && cellNorth <= north && cellSouth >= south;
+        if (inside && aggregator != null && aggregator.addPoints(cellNorth, cellWest, cellSouth, cellEast,
+                to - from, latitudeSums[to] - latitudeSums[from], longitudeSums[to] - longitudeSums[from])) {
+            return;
+        }
+
+        // Scan small cells, the cells at the full resolution of the codes,
+        // and the cells inside the range when there's nothing to aggregate, linearly.
+        if (to - from <= leafSize || level == BITS_PER_AXIS || (inside && aggregator == null)) {
+            for (int i = from; i < to; i++) {
+                double latitude = latitudes[i];
+                double longitude = longitudes[i];
+                if (longitude >= west && longitude <= east && latitude <= north && latitude >= south) {
+                    if (aggregator != null) {
+                        aggregator.addPoint(points.get(ids[i]), latitude, longitude);
+                    } else {
+                        pointsInRange.add(points.get(ids[i]));
+                    }
+                }
+            }
+            return;
+        }
+
+        // The children of the cell in the Z-order split its range into four contiguous parts.
+        long firstChildCode = MortonCode.encode(2 * cellX, 2 * cellY) << (2 * (shift - 1) + POINT_INDEX_BITS);
+        long childCodeRange = 1L << (2 * (shift - 1) + POINT_INDEX_BITS);
+
+        int childFrom = from;
+        for (int child = 0; child < 4; child++) {
+            int childTo = child == 3 ? to : lowerBound(firstChildCode + (child + 1) * childCodeRange, childFrom, to);
+            aggregateCell(level + 1, 2 * cellX + (child & 1), 2 * cellY + (child >> 1), childFrom, childTo,
+                    north, west, south, east, aggregator, pointsInRange);
+            childFrom = childTo;
+        }
+    }
+
+    /**
+     * Returns the first index within [from; to) whose code isn't less than the given one.
+     */
+    private int lowerBound(long code, int from, int to) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (codes[middle] < code) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    // Synchronized, since the index may be queried from multiple threads at once.
+    private synchronized void index() {
+        if (indexed) {
+            return;
+        }
+
+        int size = points.size();
+        checkArgument(size < (1L << POINT_INDEX_BITS));
+
+        double[] pointLatitudes = this.pointLatitudes;
+        double[] pointLongitudes = this.pointLongitudes;
+        if (pointLatitudes == null) {
+            pointLatitudes = new double[size];
+            pointLongitudes = new double[size];
+            for (int i = 0; i < size; i++) {
+                T point = points.get(i);
+                pointLatitudes[i] = point.getLatitude();
+                pointLongitudes[i] = point.getLongitude();
+            }
+        }
+
+        // Sort the codes together with the indices of the points in the lower bits.
+        long[] entries = new long[size];
+        for (int i = 0; i < size; i++) {
+            long code = MortonCode.encode(getCellX(pointLongitudes[i]), getCellY(pointLatitudes[i]));
+            entries[i] = (code << POINT_INDEX_BITS) | i;
+        }
+        Arrays.sort(entries);
+
+        long pointIndexMask = (1L << POINT_INDEX_BITS) - 1;
+        codes = entries;
+        ids = new int[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        latitudeSums = new double[size + 1];
+        longitudeSums = new double[size + 1];
+
+        for (int i = 0; i < size; i++) {
+            int id = (int) (entries[i] & pointIndexMask);
+            ids[i] = id;
+            latitudes[i] = pointLatitudes[id];
+            longitudes[i] = pointLongitudes[id];
+            latitudeSums[i + 1] = latitudeSums[i] + latitudes[i];
+            longitudeSums[i + 1] = longitudeSums[i] + longitudes[i];
+        }
+
+        indexed = true;
+    }
+
+    private static int getCellX(double longitude) {
+        return (int) Math.max(0, Math.min(CELL_COUNT - 1, (longitude + 180.0) / 360.0 * CELL_COUNT));
+    }
+
+    private static int getCellY(double latitude) {
+        return (int) Math.max(0, Math.min(CELL_COUNT - 1, (90.0 - latitude) / 180.0 * CELL_COUNT));
+    }
+
+    private static double getLongitude(int cellX) {
+        return cellX / CELL_COUNT * 360.0 - 180.0;
+    }
+
+    private static double getLatitude(int cellY) {
+        return 90.0 - cellY / CELL_COUNT * 180.0;
+    }
+}
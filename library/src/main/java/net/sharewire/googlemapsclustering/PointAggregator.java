@@ -0,0 +1,24 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Receives points from {@link SpatialIndex#aggregateRange}.
+ */
+interface PointAggregator<T extends QuadTreePoint> {
+
+    /**
+     * Adds a single point. The coordinates are passed along, so that the aggregator
+     * doesn't have to read them from the point.
+     */
+    void addPoint(@NonNull T point, double latitude, double longitude);
+
+    /**
+     * Adds all the points inside the given bounds at once if they can be aggregated together.
+     *
+     * @return <code>true</code> if the points have been added, <code>false</code>
+     * if they have to be added individually
+     */
+    boolean addPoints(double north, double west, double south, double east,
+                      int count, double latitudeSum, double longitudeSum);
+}
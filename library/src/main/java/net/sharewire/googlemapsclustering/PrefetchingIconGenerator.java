@@ -0,0 +1,22 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * An {@link IconGenerator} that can prepare the icons of clusters in advance on a background
+ * thread, so that getting the icons while rendering markers on the main thread is fast.
+ * Icon generators that only implement {@link IconGenerator} generate icons on the main thread.
+ */
+public interface PrefetchingIconGenerator<T extends ClusterItem> extends IconGenerator<T> {
+    /**
+     * Prepares the icons for the given clusters and the items of single-item clusters, so that
+     * subsequent calls of {@link #getClusterIcon(Cluster)} and {@link #getClusterItemIcon(ClusterItem)}
+     * return them without generating. Called on a background thread right before the clusters
+     * are rendered, so it must be safe to call concurrently with the other methods.
+     *
+     * @param clusters the clusters that are about to be rendered
+     */
+    void prefetchIcons(@NonNull List<Cluster<T>> clusters);
+}
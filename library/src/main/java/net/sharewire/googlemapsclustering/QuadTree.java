@@ -4,8 +4,15 @@ import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-class QuadTree<T extends QuadTreePoint> {
+class QuadTree<T extends QuadTreePoint> implements SpatialIndex<T> {
+
+    private static final int PARALLEL_INSERT_THRESHOLD = 10000;
+    // The number of points inserted between the checks whether the insertion has been interrupted.
+    static final int INTERRUPT_CHECK_INTERVAL = 1024;
 
     private final int bucketSize;
 
@@ -16,18 +23,81 @@ class QuadTree<T extends QuadTreePoint> {
         this.root = createRootNode(bucketSize);
     }
 
-    void insert(@NonNull T point) {
+    @Override
+    public synchronized void insert(@NonNull T point) {
         root.insert(point);
     }
 
+    /**
+     * Inserts the points building the subtrees of different quads in parallel. The resulting
+     * tree is the same as if the points were inserted one by one in the given order.
+     */
+    @Override
+    public synchronized void insertAll(@NonNull List<T> points) {
+        if (!root.isEmpty() || WorkerPool.PARALLELISM == 1 || points.size() < PARALLEL_INSERT_THRESHOLD) {
+            for (int i = 0, size = points.size(); i < size; i++) {
+                if (i % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                root.insert(points.get(i));
+            }
+            return;
+        }
+
+        // Split the points into quads until there are enough parts to keep all cores busy.
+        List<Callable<Void>> insertTasks = new ArrayList<>();
+        root.insertAll(points, points.size() / (WorkerPool.PARALLELISM * 4), insertTasks);
+
+        try {
+            for (Future<Void> future : WorkerPool.getExecutor().invokeAll(insertTasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public void insertAll(@NonNull List<T> points, @NonNull double[] latitudes, @NonNull double[] longitudes) {
+        // The nodes read the coordinates from the points whenever they're split or queried.
+        insertAll(points);
+    }
+
+    @Override
+    public synchronized boolean remove(@NonNull T point) {
+        return root.remove(point, point.getLatitude(), point.getLongitude());
+    }
+
+    @Override
+    public synchronized void relocate(@NonNull T point, double previousLatitude, double previousLongitude) {
+        // The point can stay in its node if it's still inside the node bounds.
+        if (root.relocateInside(point, previousLatitude, previousLongitude)) {
+            return;
+        }
+
+        if (root.remove(point, previousLatitude, previousLongitude)) {
+            root.insert(point);
+        }
+    }
+
     @NonNull
-    List<T> queryRange(double north, double west, double south, double east) {
+    @Override
+    public List<T> queryRange(double north, double west, double south, double east) {
         List<T> points = new ArrayList<>();
         root.queryRange(new QuadTreeRect(north, west, south, east), points);
         return points;
     }
 
-    void clear() {
+    @Override
+    public void aggregateRange(double north, double west, double south, double east,
+                               @NonNull PointAggregator<T> aggregator) {
+        root.aggregateRange(new QuadTreeRect(north, west, south, east), aggregator);
+    }
+
+    @Override
+    public synchronized void clear() {
         root = createRootNode(bucketSize);
     }
 
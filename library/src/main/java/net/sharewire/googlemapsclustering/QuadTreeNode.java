@@ -4,12 +4,16 @@ import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 class QuadTreeNode<T extends QuadTreePoint> {
 
     private final QuadTreeRect bounds;
     private final List<T> points;
     private final int bucketSize;
+    private int size;
+    private double latitudeSum;
+    private double longitudeSum;
     private QuadTreeNode<T> northWest;
     private QuadTreeNode<T> northEast;
     private QuadTreeNode<T> southWest;
@@ -22,14 +26,18 @@ class QuadTreeNode<T extends QuadTreePoint> {
     }
 
     boolean insert(@NonNull T point) {
+        double latitude = point.getLatitude();
+        double longitude = point.getLongitude();
+
         // Ignore objects that do not belong in this quad tree.
-        if (!bounds.contains(point.getLatitude(), point.getLongitude())) {
+        if (!bounds.contains(latitude, longitude)) {
             return false;
         }
 
         // If there is space in this quad tree, add the object here.
         if (points.size() < bucketSize) {
             points.add(point);
+            addToTotals(1, latitude, longitude);
             return true;
         }
 
@@ -38,21 +46,166 @@ class QuadTreeNode<T extends QuadTreePoint> {
             subdivide();
         }
 
-        if (northWest.insert(point)) {
+        if (northWest.insert(point) || northEast.insert(point)
+                || southWest.insert(point) || southEast.insert(point)) {
+            addToTotals(1, latitude, longitude);
             return true;
         }
-        if (northEast.insert(point)) {
-            return true;
+
+        // Otherwise, the point cannot be inserted for some unknown reason (this should never happen).
+        return false;
+    }
+
+    /**
+     * Inserts the points into this empty node the same way as {@link #insert(QuadTreePoint)} does,
+     * but only distributes them between the children. The points of the children that are
+     * small enough are inserted by the returned tasks, which can be run concurrently.
+     */
+    void insertAll(@NonNull List<T> pointsToInsert, int maxTaskSize, @NonNull List<Callable<Void>> insertTasks) {
+        List<List<T>> childPoints = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            childPoints.add(new ArrayList<T>());
         }
-        if (southWest.insert(point)) {
-            return true;
+
+        for (T point : pointsToInsert) {
+            double latitude = point.getLatitude();
+            double longitude = point.getLongitude();
+
+            if (!bounds.contains(latitude, longitude)) {
+                continue;
+            }
+
+            addToTotals(1, latitude, longitude);
+
+            if (points.size() < bucketSize) {
+                points.add(point);
+                continue;
+            }
+
+            if (northWest == null) {
+                subdivide();
+            }
+
+            if (northWest.contains(latitude, longitude)) {
+                childPoints.get(0).add(point);
+            } else if (northEast.contains(latitude, longitude)) {
+                childPoints.get(1).add(point);
+            } else if (southWest.contains(latitude, longitude)) {
+                childPoints.get(2).add(point);
+            } else {
+                childPoints.get(3).add(point);
+            }
         }
-        if (southEast.insert(point)) {
-            return true;
+
+        if (northWest == null) {
+            return;
         }
 
-        // Otherwise, the point cannot be inserted for some unknown reason (this should never happen).
-        return false;
+        List<QuadTreeNode<T>> children = getChildren();
+        for (int i = 0; i < 4; i++) {
+            List<T> pointsOfChild = childPoints.get(i);
+            if (pointsOfChild.size() > maxTaskSize) {
+                children.get(i).insertAll(pointsOfChild, maxTaskSize, insertTasks);
+            } else if (!pointsOfChild.isEmpty()) {
+                insertTasks.add(new InsertTask<>(children.get(i), pointsOfChild));
+            }
+        }
+    }
+
+    boolean remove(@NonNull T point, double latitude, double longitude) {
+        // The point can only be in the quads that contain its location.
+        if (!bounds.contains(latitude, longitude)) {
+            return false;
+        }
+
+        boolean removed = points.remove(point) || (northWest != null
+                && (northWest.remove(point, latitude, longitude) || northEast.remove(point, latitude, longitude)
+                || southWest.remove(point, latitude, longitude) || southEast.remove(point, latitude, longitude)));
+
+        if (!removed) {
+            return false;
+        }
+
+        addToTotals(-1, -latitude, -longitude);
+
+        // Merge the children into this quad once all of their points fit into it.
+        if (northWest != null && size <= bucketSize) {
+            merge();
+        }
+
+        return true;
+    }
+
+    /**
+     * Updates the location of the point if it's still inside the quad that contains it.
+     *
+     * @return <code>true</code> if the point has been updated, <code>false</code> if it has
+     * not been found or has to be moved to a different quad
+     */
+    boolean relocateInside(@NonNull T point, double previousLatitude, double previousLongitude) {
+        if (!bounds.contains(previousLatitude, previousLongitude)) {
+            return false;
+        }
+
+        double latitude = point.getLatitude();
+        double longitude = point.getLongitude();
+
+        boolean relocated;
+        if (points.contains(point)) {
+            relocated = bounds.contains(latitude, longitude);
+        } else {
+            relocated = northWest != null
+                    && (northWest.relocateInside(point, previousLatitude, previousLongitude)
+                    || northEast.relocateInside(point, previousLatitude, previousLongitude)
+                    || southWest.relocateInside(point, previousLatitude, previousLongitude)
+                    || southEast.relocateInside(point, previousLatitude, previousLongitude));
+        }
+
+        if (relocated) {
+            addToTotals(0, latitude - previousLatitude, longitude - previousLongitude);
+        }
+
+        return relocated;
+    }
+
+    /**
+     * Adds the points within the range to the aggregator. Adds all the points
+     * of a quad at once if the aggregator accepts them as a group.
+     */
+    void aggregateRange(@NonNull QuadTreeRect range, @NonNull PointAggregator<T> aggregator) {
+        if (size == 0 || !bounds.intersects(range)) {
+            return;
+        }
+
+        if (aggregator.addPoints(bounds.north, bounds.west, bounds.south, bounds.east,
+                size, latitudeSum, longitudeSum)) {
+            return;
+        }
+
+        for (T point : points) {
+            double latitude = point.getLatitude();
+            double longitude = point.getLongitude();
+            if (range.contains(latitude, longitude)) {
+                aggregator.addPoint(point, latitude, longitude);
+            }
+        }
+
+        if (northWest == null) {
+            return;
+        }
+
+        northWest.aggregateRange(range, aggregator);
+        northEast.aggregateRange(range, aggregator);
+        southWest.aggregateRange(range, aggregator);
+        southEast.aggregateRange(range, aggregator);
+    }
+
+    boolean contains(double latitude, double longitude) {
+        return bounds.contains(latitude, longitude);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
     }
 
     void queryRange(@NonNull QuadTreeRect range, @NonNull List<T> pointsInRange) {
@@ -80,6 +233,45 @@ class QuadTreeNode<T extends QuadTreePoint> {
         southEast.queryRange(range, pointsInRange);
     }
 
+    private void addToTotals(int count, double latitude, double longitude) {
+        size += count;
+        latitudeSum += latitude;
+        longitudeSum += longitude;
+    }
+
+    private void collectPoints(@NonNull List<T> allPoints) {
+        allPoints.addAll(points);
+
+        if (northWest != null) {
+            northWest.collectPoints(allPoints);
+            northEast.collectPoints(allPoints);
+            southWest.collectPoints(allPoints);
+            southEast.collectPoints(allPoints);
+        }
+    }
+
+    private void merge() {
+        northWest.collectPoints(points);
+        northEast.collectPoints(points);
+        southWest.collectPoints(points);
+        southEast.collectPoints(points);
+
+        northWest = null;
+        northEast = null;
+        southWest = null;
+        southEast = null;
+    }
+
+    @NonNull
+    private List<QuadTreeNode<T>> getChildren() {
+        List<QuadTreeNode<T>> children = new ArrayList<>(4);
+        children.add(northWest);
+        children.add(northEast);
+        children.add(southWest);
+        children.add(southEast);
+        return children;
+    }
+
     private void subdivide() {
         double northSouthHalf = bounds.north - (bounds.north - bounds.south) / 2.0;
         double eastWestHalf = bounds.east - (bounds.east - bounds.west) / 2.0;
@@ -89,4 +281,26 @@ class QuadTreeNode<T extends QuadTreePoint> {
         southWest = new QuadTreeNode<>(northSouthHalf, bounds.west, bounds.south, eastWestHalf, bucketSize);
         southEast = new QuadTreeNode<>(northSouthHalf, eastWestHalf, bounds.south, bounds.east, bucketSize);
     }
+
+    private static class InsertTask<T extends QuadTreePoint> implements Callable<Void> {
+
+        private final QuadTreeNode<T> node;
+        private final List<T> points;
+
+        private InsertTask(@NonNull QuadTreeNode<T> node, @NonNull List<T> points) {
+            this.node = node;
+            this.points = points;
+        }
+
+        @Override
+        public Void call() {
+            for (int i = 0, size = points.size(); i < size; i++) {
+                if (i % QuadTree.INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                node.insert(points.get(i));
+            }
+            return null;
+        }
+    }
 }
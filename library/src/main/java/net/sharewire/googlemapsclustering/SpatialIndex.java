@@ -0,0 +1,40 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * A spatial index of points. Changes of the index must not happen concurrently with queries.
+ * Modifying methods synchronize on the index, so to query the index while it can be
+ * modified on a different thread, the query must be synchronized on the index too.
+ */
+interface SpatialIndex<T extends QuadTreePoint> {
+
+    void insert(@NonNull T point);
+
+    void insertAll(@NonNull List<T> points);
+
+    /**
+     * Inserts the points with the given coordinates, in the same order as the points,
+     * so that the index doesn't have to read them from the points. The arrays
+     * must not be modified afterwards.
+     */
+    void insertAll(@NonNull List<T> points, @NonNull double[] latitudes, @NonNull double[] longitudes);
+
+    boolean remove(@NonNull T point);
+
+    void relocate(@NonNull T point, double previousLatitude, double previousLongitude);
+
+    @NonNull
+    List<T> queryRange(double north, double west, double south, double east);
+
+    /**
+     * Adds the points within the range to the aggregator, possibly adding
+     * groups of points at once without visiting them individually.
+     */
+    void aggregateRange(double north, double west, double south, double east,
+                        @NonNull PointAggregator<T> aggregator);
+
+    void clear();
+}
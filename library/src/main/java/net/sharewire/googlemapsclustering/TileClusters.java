@@ -0,0 +1,434 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Clusters of the tiles of a {@link TileGrid} within one or more tile ranges.
+ * Keeps the clusters of each tile separately, so that individual tiles
+ * can be re-clustered when items inside them change.
+ */
+class TileClusters<T extends ClusterItem> {
+
+    private final TileGrid grid;
+
+    private final int minClusterSize;
+
+    private final ClusterCache<T> cache;
+
+    private final List<TileRange> ranges = new ArrayList<>();
+
+    // Sorted by the tile key, so the order of the clusters doesn't depend on the order of clustering.
+    private final Map<Long, List<Cluster<T>>> tiles = new TreeMap<>();
+
+    /**
+     * @param cache the cache to take the clusters of the tiles from,
+     *              or <code>null</code> to cluster all the tiles
+     */
+    TileClusters(@NonNull TileGrid grid, int minClusterSize, @Nullable ClusterCache<T> cache) {
+        this.grid = grid;
+        this.minClusterSize = minClusterSize;
+        this.cache = cache;
+    }
+
+    @NonNull
+    TileGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Clusters the tiles within the given range. The range is split into bands of columns
+     * that are clustered concurrently, one band per thread.
+     */
+    void addTiles(@NonNull SpatialIndex<T> spatialIndex, @NonNull TileRange range, int threadCount) {
+        ranges.add(range);
+        clusterRange(spatialIndex, range, threadCount);
+    }
+
+    /**
+     * Adds the clusters of the tiles within the given range that have been clustered elsewhere,
+     * e.g. taken from the {@link ClusterHierarchy}, so that the tiles can be updated later.
+     */
+    void addClusters(@NonNull TileRange range, @NonNull List<Cluster<T>> clusters) {
+        ranges.add(range);
+        for (Cluster<T> cluster : clusters) {
+            Long tileKey = cluster.getTileKey();
+            List<Cluster<T>> tileClusters = tiles.get(tileKey);
+            if (tileClusters == null) {
+                tileClusters = new ArrayList<>();
+                tiles.put(tileKey, tileClusters);
+            }
+            tileClusters.add(cluster);
+        }
+    }
+
+    /**
+     * Returns whether these clusters can be reused for the given grid.
+     */
+    boolean isReusable(@NonNull TileGrid grid, int minClusterSize) {
+        return this.grid.getTileCount() == grid.getTileCount() && this.minClusterSize == minClusterSize;
+    }
+
+    /**
+     * Returns the clusters of the tiles within the given ranges. Reuses the clusters of the tiles
+     * that are already clustered and only clusters the tiles that are not within the current ranges.
+     */
+    @NonNull
+    TileClusters<T> moveTo(@NonNull SpatialIndex<T> spatialIndex, @NonNull List<TileRange> newRanges,
+                           int threadCount) {
+        TileClusters<T> tileClusters = new TileClusters<>(grid, minClusterSize, cache);
+        tileClusters.ranges.addAll(newRanges);
+
+        for (Map.Entry<Long, List<Cluster<T>>> entry : tiles.entrySet()) {
+            long tileKey = entry.getKey();
+            if (tileClusters.isClustered(TileGrid.getKeyTileX(tileKey), TileGrid.getKeyTileY(tileKey))) {
+                tileClusters.tiles.put(tileKey, entry.getValue());
+            }
+        }
+
+        for (TileRange newRange : newRanges) {
+            List<TileRange> exposedRanges = Collections.singletonList(newRange);
+            for (TileRange range : ranges) {
+                List<TileRange> remainingRanges = new ArrayList<>();
+                for (TileRange exposedRange : exposedRanges) {
+                    remainingRanges.addAll(exposedRange.subtract(range));
+                }
+                exposedRanges = remainingRanges;
+            }
+
+            for (TileRange exposedRange : exposedRanges) {
+                tileClusters.clusterRange(spatialIndex, exposedRange, threadCount);
+            }
+        }
+
+        return tileClusters;
+    }
+
+    /**
+     * Re-clusters the given tiles if they are within the clustered ranges.
+     *
+     * @param tileKeys the keys of the tiles returned by {@link TileGrid#getTileKey(long, long)}
+     */
+    void updateTiles(@NonNull SpatialIndex<T> spatialIndex, @NonNull Collection<Long> tileKeys) {
+        for (Long tileKey : tileKeys) {
+            long tileX = TileGrid.getKeyTileX(tileKey);
+            long tileY = TileGrid.getKeyTileY(tileKey);
+
+            if (!isClustered(tileX, tileY)) {
+                continue;
+            }
+
+            tiles.remove(tileKey);
+            tiles.putAll(clusterTiles(spatialIndex, new TileRange(tileX, tileY, tileX, tileY)));
+        }
+    }
+
+    @NonNull
+    List<Cluster<T>> getClusters() {
+        List<Cluster<T>> clusters = new ArrayList<>();
+        for (List<Cluster<T>> tileClusters : tiles.values()) {
+            clusters.addAll(tileClusters);
+        }
+        return clusters;
+    }
+
+    private boolean isClustered(long tileX, long tileY) {
+        for (TileRange range : ranges) {
+            if (range.contains(tileX, tileY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clusterRange(@NonNull SpatialIndex<T> spatialIndex, @NonNull TileRange range, int threadCount) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+
+        if (cache != null) {
+            range = takeCachedTiles(range);
+            if (range == null) {
+                return;
+            }
+        }
+
+        Map<Long, List<Cluster<T>>> rangeClusters;
+
+        long columnCount = range.endX - range.startX + 1;
+        int bandCount = (int) Math.min(threadCount, columnCount);
+
+        if (bandCount <= 1) {
+            rangeClusters = clusterTiles(spatialIndex, range);
+        } else {
+            rangeClusters = new HashMap<>();
+
+            List<BandTask> bandTasks = new ArrayList<>(bandCount);
+            for (int i = 0; i < bandCount; i++) {
+                long startX = range.startX + columnCount * i / bandCount;
+                long endX = range.startX + columnCount * (i + 1) / bandCount - 1;
+                bandTasks.add(new BandTask(spatialIndex, new TileRange(startX, range.startY, endX, range.endY)));
+            }
+
+            try {
+                for (Future<Map<Long, List<Cluster<T>>>> future : WorkerPool.getExecutor().invokeAll(bandTasks)) {
+                    rangeClusters.putAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        // The clusters of an interrupted run can be missing some of the tiles, so they're neither kept nor cached.
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+
+        tiles.putAll(rangeClusters);
+
+        if (cache != null) {
+            for (long tileX = range.startX; tileX <= range.endX; tileX++) {
+                for (long tileY = range.startY; tileY <= range.endY; tileY++) {
+                    long tileKey = TileGrid.getTileKey(tileX, tileY);
+                    List<Cluster<T>> clusters = rangeClusters.get(tileKey);
+                    cache.put(grid, tileKey, minClusterSize,
+                            clusters != null ? clusters : Collections.<Cluster<T>>emptyList());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the clusters of the tiles within the given range from the cache.
+     *
+     * @return the smallest range containing all the tiles that aren't cached,
+     * or <code>null</code> if all the tiles are cached
+     */
+    @Nullable
+    private TileRange takeCachedTiles(@NonNull TileRange range) {
+        long startX = Long.MAX_VALUE;
+        long startY = Long.MAX_VALUE;
+        long endX = Long.MIN_VALUE;
+        long endY = Long.MIN_VALUE;
+
+        for (long tileX = range.startX; tileX <= range.endX; tileX++) {
+            for (long tileY = range.startY; tileY <= range.endY; tileY++) {
+                long tileKey = TileGrid.getTileKey(tileX, tileY);
+                List<Cluster<T>> clusters = cache.get(grid, tileKey, minClusterSize);
+
+                if (clusters == null) {
+                    startX = Math.min(startX, tileX);
+                    startY = Math.min(startY, tileY);
+                    endX = Math.max(endX, tileX);
+                    endY = Math.max(endY, tileY);
+                } else if (!clusters.isEmpty()) {
+                    tiles.put(tileKey, clusters);
+                }
+            }
+        }
+
+        return startX <= endX ? new TileRange(startX, startY, endX, endY) : null;
+    }
+
+    @NonNull
+    private Map<Long, List<Cluster<T>>> clusterTiles(@NonNull SpatialIndex<T> spatialIndex,
+                                                     @NonNull TileRange range) {
+        // Aggregate all the tiles at once and put each point into its tile by computing the tile index.
+        // Groups of points that fall into a single tile are added by their count without visiting them.
+        TileAggregator aggregator = new TileAggregator(range);
+        spatialIndex.aggregateRange(grid.getNorth(range.startY), grid.getWest(range.startX),
+                grid.getSouth(range.endY), grid.getEast(range.endX), aggregator);
+
+        if (aggregator.tiles.isEmpty() || Thread.currentThread().isInterrupted()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Long, List<Cluster<T>>> rangeClusters = new HashMap<>();
+        for (Map.Entry<Long, Tile<T>> entry : aggregator.tiles.entrySet()) {
+            // Loading the items of the small tiles queries the index, so stop as soon as the result isn't needed.
+            if (Thread.currentThread().isInterrupted()) {
+                return Collections.emptyMap();
+            }
+            rangeClusters.put(entry.getKey(), createClusters(spatialIndex, entry.getValue()));
+        }
+        return rangeClusters;
+    }
+
+    @NonNull
+    private List<Cluster<T>> createClusters(@NonNull SpatialIndex<T> spatialIndex, @NonNull Tile<T> tile) {
+        Cluster.ItemsLoader<T> itemsLoader = new TileItemsLoader<>(spatialIndex, grid, tile.x, tile.y);
+
+        if (tile.count >= minClusterSize) {
+            double latitude = tile.totalLatitude / tile.count;
+            double longitude = tile.totalLongitude / tile.count;
+
+            // The item of a single-item cluster is needed to render its marker anyway.
+            if (tile.aggregated && tile.count > 1) {
+                return Collections.singletonList(new Cluster<>(latitude, longitude,
+                        tile.count, itemsLoader, grid, tile.x, tile.y));
+            } else {
+                return Collections.singletonList(new Cluster<>(latitude, longitude,
+                        tile.aggregated ? itemsLoader.loadItems() : tile.points, grid, tile.x, tile.y));
+            }
+        } else {
+            List<T> points = tile.aggregated ? itemsLoader.loadItems() : tile.points;
+
+            List<Cluster<T>> clusters = new ArrayList<>(points.size());
+            for (T point : points) {
+                clusters.add(new Cluster<>(point, grid, tile.x, tile.y));
+            }
+            return clusters;
+        }
+    }
+
+    private static class Tile<T extends ClusterItem> {
+
+        private final long x;
+        private final long y;
+        private final List<T> points = new ArrayList<>();
+        private int count;
+        private double totalLatitude;
+        private double totalLongitude;
+        // Whether some of the points are only counted and not in the list.
+        private boolean aggregated;
+
+        private Tile(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        private void add(@NonNull T point, double latitude, double longitude) {
+            points.add(point);
+            count++;
+            totalLatitude += latitude;
+            totalLongitude += longitude;
+        }
+
+        private void add(int count, double latitudeSum, double longitudeSum) {
+            this.count += count;
+            totalLatitude += latitudeSum;
+            totalLongitude += longitudeSum;
+            aggregated = true;
+        }
+    }
+
+    private class TileAggregator implements PointAggregator<T> {
+
+        private final TileRange range;
+        private final Map<Long, Tile<T>> tiles = new HashMap<>();
+
+        private TileAggregator(@NonNull TileRange range) {
+            this.range = range;
+        }
+
+        @Override
+        public void addPoint(@NonNull T point, double latitude, double longitude) {
+            long tileX = grid.getTileX(longitude);
+            long tileY = grid.getTileY(latitude);
+
+            // Points on the outer edges of the range belong to the tiles outside of it.
+            if (range.contains(tileX, tileY)) {
+                getTile(tileX, tileY).add(point, latitude, longitude);
+            }
+        }
+
+        @Override
+        public boolean addPoints(double north, double west, double south, double east,
+                                 int count, double latitudeSum, double longitudeSum) {
+            long tileX = grid.getTileX(west);
+            long tileY = grid.getTileY(north);
+
+            if (tileX != grid.getTileX(east) || tileY != grid.getTileY(south)
+                    || !range.contains(tileX, tileY)) {
+                return false;
+            }
+
+            getTile(tileX, tileY).add(count, latitudeSum, longitudeSum);
+            return true;
+        }
+
+        @NonNull
+        private Tile<T> getTile(long tileX, long tileY) {
+            Long tileKey = TileGrid.getTileKey(tileX, tileY);
+            Tile<T> tile = tiles.get(tileKey);
+            if (tile == null) {
+                tile = new Tile<>(tileX, tileY);
+                tiles.put(tileKey, tile);
+            }
+            return tile;
+        }
+    }
+
+    /**
+     * Collects the items of a tile from the spatial index at the time they're requested.
+     * {@link ClusterEngine} makes the clusters collect their items before the items
+     * of their tiles change, so the items match the amount the clusters have been made with.
+     * The only exception is an item that has already moved to a different tile by the time
+     * its update is applied, since the index reads the current positions of the items.
+     */
+    private static class TileItemsLoader<T extends ClusterItem> implements Cluster.ItemsLoader<T> {
+
+        private final SpatialIndex<T> spatialIndex;
+        private final TileGrid grid;
+        private final long x;
+        private final long y;
+
+        private TileItemsLoader(@NonNull SpatialIndex<T> spatialIndex, @NonNull TileGrid grid,
+                                long x, long y) {
+            this.spatialIndex = spatialIndex;
+            this.grid = grid;
+            this.x = x;
+            this.y = y;
+        }
+
+        @NonNull
+        @Override
+        public List<T> loadItems() {
+            List<T> points;
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (spatialIndex) {
+                points = spatialIndex.queryRange(grid.getNorth(y), grid.getWest(x),
+                        grid.getSouth(y), grid.getEast(x));
+            }
+
+            List<T> items = new ArrayList<>(points.size());
+            for (T point : points) {
+                // Points on the edges of the tile can belong to the neighbouring tiles.
+                if (grid.getTileX(point.getLongitude()) == x && grid.getTileY(point.getLatitude()) == y) {
+                    items.add(point);
+                }
+            }
+            return items;
+        }
+    }
+
+    private class BandTask implements Callable<Map<Long, List<Cluster<T>>>> {
+
+        private final SpatialIndex<T> spatialIndex;
+        private final TileRange range;
+
+        private BandTask(@NonNull SpatialIndex<T> spatialIndex, @NonNull TileRange range) {
+            this.spatialIndex = spatialIndex;
+            this.range = range;
+        }
+
+        @Override
+        public Map<Long, List<Cluster<T>>> call() {
+            return clusterTiles(spatialIndex, range);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The grid of tiles that items are clustered into at a given zoom level.
+ * Tiles are numbered from the north-west corner of the map.
+ * <p>
+ * The grid divides the map in the Web Mercator projection the map is drawn in, so all the tiles
+ * have the same size on the screen regardless of their latitude: 128 dp at any integer zoom level.
+ * The rows of tiles at the edges of the projection, at about 85° north and south, also hold
+ * the items closer to the poles.
+ */
+class TileGrid {
+
+    // The size of a tile on the screen at integer zoom levels, in dp.
+    private static final int TILE_SIZE = 128;
+
+    private final long tileCount;
+    private final double stepLongitude;
+
+    TileGrid(float zoomLevel) {
+        tileCount = Math.max(1, (long) (Math.pow(2, zoomLevel) * 2));
+        stepLongitude = 360.0 / tileCount;
+    }
+
+    long getTileCount() {
+        return tileCount;
+    }
+
+    long getTileX(double longitude) {
+        return (long) ((longitude + 180.0) / stepLongitude);
+    }
+
+    long getTileY(double latitude) {
+        return Math.max(0, Math.min(tileCount - 1, (long) (getMercatorY(latitude) * tileCount)));
+    }
+
+    double getNorth(long tileY) {
+        return tileY <= 0 ? 90.0 : getLatitude((double) tileY / tileCount);
+    }
+
+    double getWest(long tileX) {
+        return tileX * stepLongitude - 180.0;
+    }
+
+    double getSouth(long tileY) {
+        return tileY >= tileCount - 1 ? -90.0 : getNorth(tileY + 1);
+    }
+
+    double getEast(long tileX) {
+        return getWest(tileX) + stepLongitude;
+    }
+
+    /**
+     * Returns the latitude that is the given number of tiles to the south of the given one,
+     * or to the north if the number is negative.
+     */
+    double offsetLatitude(double latitude, double tileOffset) {
+        // The latitudes beyond the edges of the projection belong to the edge rows.
+        double y = Math.max(0.0, Math.min(1.0, getMercatorY(latitude))) + tileOffset / tileCount;
+        if (y <= 0.0) {
+            return 90.0;
+        } else if (y >= 1.0) {
+            return -90.0;
+        } else {
+            return getLatitude(y);
+        }
+    }
+
+    /**
+     * Returns the range of tiles covering the given bounds, extended
+     * by one tile to the east and to the south.
+     */
+    @NonNull
+    TileRange getTileRange(double north, double west, double south, double east) {
+        return new TileRange(getTileX(west), getTileY(north), getTileX(east) + 1, getTileY(south) + 1);
+    }
+
+    /**
+     * Returns the offset to add to the zoom level of the map, so that the tiles are twice
+     * as large as the given cluster radius on the screen at integer zoom levels. The offset
+     * is negative for radii above 64 dp.
+     */
+    static float getZoomOffset(int clusterRadius) {
+        return (float) (Math.log(TILE_SIZE / 2.0 / clusterRadius) / Math.log(2));
+    }
+
+    static long getTileKey(long tileX, long tileY) {
+        return (tileX << 32) | tileY;
+    }
+
+    static long getKeyTileX(long tileKey) {
+        return tileKey >>> 32;
+    }
+
+    static long getKeyTileY(long tileKey) {
+        return tileKey & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns the vertical position of the latitude in the Web Mercator projection,
+     * from 0 at the north edge to 1 at the south edge.
+     */
+    private static double getMercatorY(double latitude) {
+        double sin = Math.sin(Math.toRadians(latitude));
+        return 0.5 - Math.log((1.0 + sin) / (1.0 - sin)) / (4.0 * Math.PI);
+    }
+
+    private static double getLatitude(double mercatorY) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * mercatorY))));
+    }
+}
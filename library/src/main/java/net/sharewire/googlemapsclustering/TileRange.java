@@ -0,0 +1,66 @@
+package net.sharewire.googlemapsclustering;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rectangular range of tiles of a {@link TileGrid}, inclusive on all sides.
+ */
+class TileRange {
+
+    final long startX;
+    final long startY;
+    final long endX;
+    final long endY;
+
+    TileRange(long startX, long startY, long endX, long endY) {
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+    }
+
+    boolean contains(long tileX, long tileY) {
+        return tileX >= startX && tileX <= endX && tileY >= startY && tileY <= endY;
+    }
+
+    boolean intersects(@NonNull TileRange range) {
+        return startX <= range.endX && endX >= range.startX && startY <= range.endY && endY >= range.startY;
+    }
+
+    /**
+     * Returns the ranges covering the tiles of this range that are not within the given range.
+     */
+    @NonNull
+    List<TileRange> subtract(@NonNull TileRange range) {
+        if (!intersects(range)) {
+            return Collections.singletonList(this);
+        }
+
+        List<TileRange> ranges = new ArrayList<>(4);
+
+        // The northern and the southern strips span the whole width of this range.
+        if (startY < range.startY) {
+            ranges.add(new TileRange(startX, startY, endX, range.startY - 1));
+        }
+        if (endY > range.endY) {
+            ranges.add(new TileRange(startX, range.endY + 1, endX, endY));
+        }
+
+        // The western and the eastern strips span the rows of the intersection only.
+        long middleStartY = Math.max(startY, range.startY);
+        long middleEndY = Math.min(endY, range.endY);
+
+        if (startX < range.startX) {
+            ranges.add(new TileRange(startX, middleStartY, range.startX - 1, middleEndY));
+        }
+        if (endX > range.endX) {
+            ranges.add(new TileRange(range.endX + 1, middleStartY, endX, middleEndY));
+        }
+
+        return ranges;
+    }
+}
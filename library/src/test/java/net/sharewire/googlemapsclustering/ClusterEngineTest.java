@@ -0,0 +1,114 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterEngineTest {
+
+    private static final double NORTH = 52.5;
+    private static final double WEST = 4.5;
+    private static final double SOUTH = 52.0;
+    private static final double EAST = 5.5;
+
+    @Test
+    public void clusterCountDoesntExceedMaxMarkerCount() {
+        List<TestPoint> points = createPoints(10000);
+        ClusterEngine<TestPoint> clusterEngine = new ClusterEngine<>(createSpatialIndex(points));
+
+        for (int maxMarkerCount : new int[]{1000, 200, 50}) {
+            List<Cluster<TestPoint>> clusters = clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 12.0F,
+                    3, maxMarkerCount, 1);
+
+            assertTrue(clusters.size() + " clusters", clusters.size() <= maxMarkerCount);
+            assertEquals(points.size(), getItemCount(clusters));
+        }
+    }
+
+    @Test
+    public void tilesFarthestFromCenterAreMergedFirst() {
+        // Three tiles of three items each at zoom level 10, at increasing distances from the center
+        // of the region. The tiles are split into single items, since they're below the minimum cluster size.
+        List<TestPoint> nearPoints = Arrays.asList(
+                new TestPoint(52.25, 5.0), new TestPoint(52.25, 5.01), new TestPoint(52.25, 5.02));
+        List<TestPoint> middlePoints = Arrays.asList(
+                new TestPoint(52.35, 5.23), new TestPoint(52.35, 5.24), new TestPoint(52.35, 5.25));
+        List<TestPoint> farPoints = Arrays.asList(
+                new TestPoint(52.45, 5.45), new TestPoint(52.45, 5.46), new TestPoint(52.45, 5.47));
+        List<TestPoint> points = new ArrayList<>();
+        points.addAll(nearPoints);
+        points.addAll(middlePoints);
+        points.addAll(farPoints);
+        ClusterEngine<TestPoint> clusterEngine = new ClusterEngine<>(createSpatialIndex(points));
+
+        assertEquals(9, clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 10.0F, 4, 9, 1).size());
+
+        List<Cluster<TestPoint>> clusters = clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 10.0F, 4, 7, 1);
+        assertEquals(7, clusters.size());
+        assertMerged(clusters, farPoints);
+
+        clusters = clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 10.0F, 4, 5, 1);
+        assertEquals(5, clusters.size());
+        assertMerged(clusters, farPoints);
+        assertMerged(clusters, middlePoints);
+
+        clusters = clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 10.0F, 4, 3, 1);
+        assertEquals(3, clusters.size());
+        assertMerged(clusters, nearPoints);
+    }
+
+    @Test
+    public void coarserTilesAreUsedWhenTilesExceedMaxMarkerCount() {
+        List<TestPoint> points = createPoints(10000);
+        ClusterEngine<TestPoint> clusterEngine = new ClusterEngine<>(createSpatialIndex(points));
+        TileGrid tileGrid = new TileGrid(14.0F);
+
+        List<Cluster<TestPoint>> clusters = clusterEngine.getClusters(NORTH, WEST, SOUTH, EAST, 14.0F, 1, 10, 1);
+
+        assertTrue(clusters.size() + " clusters", clusters.size() <= 10);
+        for (Cluster<TestPoint> cluster : clusters) {
+            assertTrue(cluster.getTileGrid().getTileCount() < tileGrid.getTileCount());
+        }
+        assertEquals(points.size(), getItemCount(clusters));
+    }
+
+    private static void assertMerged(List<Cluster<TestPoint>> clusters, List<TestPoint> points) {
+        for (Cluster<TestPoint> cluster : clusters) {
+            if (cluster.getItems().contains(points.get(0))) {
+                assertEquals(points.size(), cluster.getItemCount());
+                return;
+            }
+        }
+        throw new AssertionError("No cluster of " + points);
+    }
+
+    private static int getItemCount(List<Cluster<TestPoint>> clusters) {
+        int itemCount = 0;
+        for (Cluster<TestPoint> cluster : clusters) {
+            itemCount += cluster.getItemCount();
+        }
+        return itemCount;
+    }
+
+    private static SpatialIndex<TestPoint> createSpatialIndex(List<TestPoint> points) {
+        SpatialIndex<TestPoint> spatialIndex = new QuadTree<>(ClusterEngine.QUAD_TREE_BUCKET_CAPACITY);
+        spatialIndex.insertAll(points);
+        return spatialIndex;
+    }
+
+    private static List<TestPoint> createPoints(int count) {
+        Random random = new Random(42);
+        List<TestPoint> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            points.add(new TestPoint(SOUTH + random.nextDouble() * (NORTH - SOUTH),
+                    WEST + random.nextDouble() * (EAST - WEST)));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,80 @@
+package net.sharewire.googlemapsclustering;
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ClusterRendererTest {
+
+    @Test
+    public void markerOfClusterWithSameContentRefersToNewCluster() {
+        Marker marker = createMarker();
+        GoogleMap googleMap = mock(GoogleMap.class);
+        when(googleMap.getCameraPosition()).thenReturn(new CameraPosition(new LatLng(52.0, 5.0), 12.0F, 0.0F, 0.0F));
+        when(googleMap.addMarker(any(MarkerOptions.class))).thenReturn(marker);
+        @SuppressWarnings("unchecked")
+        IconGenerator<TestPoint> iconGenerator = mock(IconGenerator.class);
+        when(iconGenerator.getClusterIcon(ArgumentMatchers.<Cluster<TestPoint>>any())).thenReturn(mock(BitmapDescriptor.class));
+        @SuppressWarnings("unchecked")
+        ClusterManager.Callbacks<TestPoint> callbacks = mock(ClusterManager.Callbacks.class);
+
+        ClusterRenderer<TestPoint> renderer = new ClusterRenderer<>(googleMap, mock(Choreographer.class), iconGenerator);
+        renderer.setCallbacks(callbacks);
+
+        TileGrid tileGrid = new TileGrid(12.0F);
+        Cluster<TestPoint> cluster = new Cluster<>(52.0, 5.0,
+                Arrays.asList(new TestPoint(52.0, 5.0), new TestPoint(52.0, 5.0)), tileGrid, 10, 20);
+        renderer.render(Collections.singletonList(cluster), false);
+        renderer.doFrame(0);
+        assertSame(cluster, marker.getTag());
+
+        // The same tile with the same position and item count, but with other items.
+        Cluster<TestPoint> newCluster = new Cluster<>(52.0, 5.0,
+                Arrays.asList(new TestPoint(52.0, 5.0), new TestPoint(52.0, 5.0)), tileGrid, 10, 20);
+        renderer.render(Collections.singletonList(newCluster), false);
+
+        assertSame(newCluster, marker.getTag());
+        renderer.onMarkerClick(marker);
+        verify(callbacks).onClusterClick(newCluster);
+    }
+
+    private static Marker createMarker() {
+        final Object[] tag = new Object[1];
+        Marker marker = mock(Marker.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                tag[0] = invocation.getArgument(0);
+                return null;
+            }
+        }).when(marker).setTag(any());
+        when(marker.getTag()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return tag[0];
+            }
+        });
+        return marker;
+    }
+}
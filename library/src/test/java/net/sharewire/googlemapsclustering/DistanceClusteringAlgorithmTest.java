@@ -0,0 +1,77 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DistanceClusteringAlgorithmTest {
+
+    // The cluster distance is a tile of the grid of zoom level 11, about 0.088° of longitude.
+    private static final float ZOOM_LEVEL = 10.0F;
+
+    @Test
+    public void itemsWithinClusterDistanceAreClustered() {
+        TestPoint first = new TestPoint(52.0, 5.0);
+        TestPoint second = new TestPoint(52.0, 5.05);
+        TestPoint distant = new TestPoint(52.0, 5.5);
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex(first, second, distant);
+
+        List<Cluster<TestPoint>> clusters = new DistanceClusteringAlgorithm<TestPoint>()
+                .getClusters(spatialIndex, 53.0, 4.0, 51.0, 6.0, ZOOM_LEVEL, 1, 1);
+
+        assertEquals(2, clusters.size());
+        assertEquals(Arrays.asList(first, second), clusters.get(0).getItems());
+        assertEquals(52.0, clusters.get(0).getLatitude(), 1e-9);
+        assertEquals(5.025, clusters.get(0).getLongitude(), 1e-9);
+        assertEquals(Arrays.asList(distant), clusters.get(1).getItems());
+    }
+
+    @Test
+    public void clustersSmallerThanMinClusterSizeAreSplitIntoSingleItems() {
+        TestPoint first = new TestPoint(52.0, 5.0);
+        TestPoint second = new TestPoint(52.01, 5.01);
+        TestPoint third = new TestPoint(52.02, 5.02);
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex(first, second, third);
+
+        List<Cluster<TestPoint>> clusters = new DistanceClusteringAlgorithm<TestPoint>()
+                .getClusters(spatialIndex, 53.0, 4.0, 51.0, 6.0, ZOOM_LEVEL, 4, 1);
+
+        assertEquals(3, clusters.size());
+        List<TestPoint> items = new ArrayList<>();
+        for (Cluster<TestPoint> cluster : clusters) {
+            assertEquals(1, cluster.getItemCount());
+            assertEquals(cluster.getItems().get(0).getLatitude(), cluster.getLatitude(), 0.0);
+            assertEquals(cluster.getItems().get(0).getLongitude(), cluster.getLongitude(), 0.0);
+            items.addAll(cluster.getItems());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(first, second, third)), new HashSet<>(items));
+        // Single items are still identified by distinct tiles.
+        assertEquals(3, new HashSet<>(clusters).size());
+    }
+
+    @Test
+    public void itemsAcrossAntimeridianAreClustered() {
+        TestPoint east = new TestPoint(0.0, 179.98);
+        TestPoint west = new TestPoint(0.0, -179.98);
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex(east, west);
+
+        List<Cluster<TestPoint>> clusters = new DistanceClusteringAlgorithm<TestPoint>()
+                .getClusters(spatialIndex, 1.0, 179.0, -1.0, -179.0, ZOOM_LEVEL, 1, 1);
+
+        assertEquals(1, clusters.size());
+        assertEquals(new HashSet<>(Arrays.asList(east, west)), new HashSet<>(clusters.get(0).getItems()));
+        // The average of the longitudes is taken across the antimeridian rather than around the globe.
+        assertEquals(180.0, Math.abs(clusters.get(0).getLongitude()), 1e-9);
+    }
+
+    private static SpatialIndex<TestPoint> createSpatialIndex(TestPoint... points) {
+        SpatialIndex<TestPoint> spatialIndex = new QuadTree<>(ClusterEngine.QUAD_TREE_BUCKET_CAPACITY);
+        spatialIndex.insertAll(Arrays.asList(points));
+        return spatialIndex;
+    }
+}
@@ -0,0 +1,128 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GridClusteringAlgorithmTest {
+
+    private static final double NORTH = 52.5;
+    private static final double WEST = 4.5;
+    private static final double SOUTH = 52.0;
+    private static final double EAST = 5.5;
+
+    @Test
+    public void fractionalZoomLevelsShareTheTilesOfTheIntegerZoomLevel() {
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex();
+        ClusterCache<TestPoint> clusterCache = new ClusterCache<>();
+        GridClusteringAlgorithm<TestPoint> algorithm = new GridClusteringAlgorithm<>(null, clusterCache);
+
+        List<Cluster<TestPoint>> clusters = algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 12.0F, 1, 1);
+
+        assertEquals(clusters, algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 12.37F, 1, 1));
+        assertEquals(clusters, algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 12.99F, 1, 1));
+    }
+
+    @Test
+    public void cachedTilesAreReusedAtFractionalZoomLevels() {
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex();
+        ClusterCache<TestPoint> clusterCache = new ClusterCache<>();
+        clusterCache.setMaxSize(10000);
+        GridClusteringAlgorithm<TestPoint> algorithm = new GridClusteringAlgorithm<>(null, clusterCache);
+
+        algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 12.37F, 1, 1);
+        // Zoom out, so that the clusters of the last region can't be reused without the cache.
+        algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 11.5F, 1, 1);
+
+        long missCount = clusterCache.getMissCount();
+        algorithm.getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, 12.41F, 1, 1);
+
+        assertEquals(missCount, clusterCache.getMissCount());
+    }
+
+    @Test
+    public void clusterHierarchyMatchesClustersOfSpatialIndex() {
+        List<TestPoint> points = createPoints();
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex(points);
+
+        for (float zoomLevel : new float[]{-1.5F, 0.0F, 4.0F, 9.5F, 12.0F, 16.0F}) {
+            for (int minClusterSize : new int[]{1, 3}) {
+                GridClusteringAlgorithm<TestPoint> hierarchyAlgorithm = new GridClusteringAlgorithm<>(
+                        new ClusterHierarchy<>(points), new ClusterCache<TestPoint>());
+                GridClusteringAlgorithm<TestPoint> indexAlgorithm = new GridClusteringAlgorithm<>(
+                        null, new ClusterCache<TestPoint>());
+
+                assertSameClusters(
+                        indexAlgorithm.getClusters(spatialIndex, 52.4, 4.6, 52.1, 5.4, zoomLevel, minClusterSize, 1),
+                        hierarchyAlgorithm.getClusters(spatialIndex, 52.4, 4.6, 52.1, 5.4, zoomLevel, minClusterSize, 1));
+            }
+        }
+    }
+
+    @Test
+    public void clustersDontDependOnThreadCount() {
+        SpatialIndex<TestPoint> spatialIndex = createSpatialIndex();
+
+        for (float zoomLevel : new float[]{9.5F, 12.0F, 14.0F}) {
+            List<Cluster<TestPoint>> clusters = new GridClusteringAlgorithm<>(null, new ClusterCache<TestPoint>())
+                    .getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, zoomLevel, 3, 1);
+
+            for (int threadCount : new int[]{2, 3, 8}) {
+                List<Cluster<TestPoint>> concurrentClusters = new GridClusteringAlgorithm<>(null,
+                        new ClusterCache<TestPoint>())
+                        .getClusters(spatialIndex, NORTH, WEST, SOUTH, EAST, zoomLevel, 3, threadCount);
+
+                // The same clusters in the same order, including the tiles on the seams of the bands.
+                assertEquals(clusters, concurrentClusters);
+                assertSameClusters(clusters, concurrentClusters);
+                for (int i = 0; i < clusters.size(); i++) {
+                    assertEquals(clusters.get(i).getItems(), concurrentClusters.get(i).getItems());
+                }
+            }
+        }
+    }
+
+    private static void assertSameClusters(List<Cluster<TestPoint>> expected, List<Cluster<TestPoint>> actual) {
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertEquals(expected.size(), actual.size());
+
+        Map<Cluster<TestPoint>, Cluster<TestPoint>> actualClusters = new HashMap<>();
+        for (Cluster<TestPoint> cluster : actual) {
+            actualClusters.put(cluster, cluster);
+        }
+        for (Cluster<TestPoint> expectedCluster : expected) {
+            Cluster<TestPoint> actualCluster = actualClusters.get(expectedCluster);
+            assertEquals(expectedCluster.getItemCount(), actualCluster.getItemCount());
+            assertEquals(expectedCluster.getLatitude(), actualCluster.getLatitude(), 1e-9);
+            assertEquals(expectedCluster.getLongitude(), actualCluster.getLongitude(), 1e-9);
+            assertEquals(new HashSet<>(expectedCluster.getItems()), new HashSet<>(actualCluster.getItems()));
+        }
+    }
+
+    private static SpatialIndex<TestPoint> createSpatialIndex() {
+        return createSpatialIndex(createPoints());
+    }
+
+    private static SpatialIndex<TestPoint> createSpatialIndex(List<TestPoint> points) {
+        SpatialIndex<TestPoint> spatialIndex = new QuadTree<>(ClusterEngine.QUAD_TREE_BUCKET_CAPACITY);
+        spatialIndex.insertAll(points);
+        return spatialIndex;
+    }
+
+    private static List<TestPoint> createPoints() {
+        Random random = new Random(42);
+        List<TestPoint> points = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            points.add(new TestPoint(SOUTH + random.nextDouble() * (NORTH - SOUTH),
+                    WEST + random.nextDouble() * (EAST - WEST)));
+        }
+        return points;
+    }
+}
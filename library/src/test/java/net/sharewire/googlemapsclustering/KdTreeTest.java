@@ -0,0 +1,92 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.assertQueriesMatchBruteForce;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.createGridPoints;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.getGridLatitude;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.getGridLongitude;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KdTreeTest {
+
+    private static final int NODE_SIZE = ClusterEngine.KD_TREE_NODE_SIZE;
+
+    @Test
+    public void queryRangeMatchesBruteForce() {
+        Random random = new Random(42);
+        List<TestPoint> points = createGridPoints(random, 20000);
+
+        KdTree<TestPoint> kdTree = new KdTree<>(NODE_SIZE);
+        kdTree.insertAll(points);
+
+        assertQueriesMatchBruteForce(random, kdTree, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceWithCoordinateArrays() {
+        Random random = new Random(43);
+        List<TestPoint> points = createGridPoints(random, 20000);
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            latitudes[i] = points.get(i).latitude;
+            longitudes[i] = points.get(i).longitude;
+        }
+
+        KdTree<TestPoint> kdTree = new KdTree<>(NODE_SIZE);
+        kdTree.insertAll(points, latitudes, longitudes);
+
+        assertQueriesMatchBruteForce(random, kdTree, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceAfterChanges() {
+        Random random = new Random(44);
+        List<TestPoint> points = createGridPoints(random, 5000);
+
+        KdTree<TestPoint> kdTree = new KdTree<>(NODE_SIZE);
+        kdTree.insertAll(points);
+        kdTree.queryRange(90.0, -180.0, -90.0, 180.0);
+
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = points.remove(random.nextInt(points.size()));
+            assertTrue(kdTree.remove(point));
+        }
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = points.get(random.nextInt(points.size()));
+            double previousLatitude = point.latitude;
+            double previousLongitude = point.longitude;
+            point.latitude = getGridLatitude(random);
+            point.longitude = getGridLongitude(random);
+            kdTree.relocate(point, previousLatitude, previousLongitude);
+        }
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = new TestPoint(getGridLatitude(random), getGridLongitude(random));
+            points.add(point);
+            kdTree.insert(point);
+        }
+
+        assertQueriesMatchBruteForce(random, kdTree, points);
+    }
+
+    @Test
+    public void queryRangeReturnsDuplicates() {
+        List<TestPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new TestPoint(52.0, 4.0));
+        }
+
+        KdTree<TestPoint> kdTree = new KdTree<>(NODE_SIZE);
+        kdTree.insertAll(points);
+
+        assertEquals(1000, kdTree.queryRange(52.0, 4.0, 52.0, 4.0).size());
+        assertEquals(0, kdTree.queryRange(51.9, 4.0, 51.0, 4.0).size());
+    }
+}
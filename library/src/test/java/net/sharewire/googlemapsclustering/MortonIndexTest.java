@@ -0,0 +1,121 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.assertAggregatesMatchBruteForce;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.assertQueriesMatchBruteForce;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.createGridPoints;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.getGridLatitude;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.getGridLongitude;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MortonIndexTest {
+
+    private static final int LEAF_SIZE = ClusterEngine.MORTON_INDEX_LEAF_SIZE;
+
+    @Test
+    public void queryRangeMatchesBruteForce() {
+        Random random = new Random(42);
+        List<TestPoint> points = createGridPoints(random, 20000);
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points);
+
+        assertQueriesMatchBruteForce(random, mortonIndex, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceForScatteredPoints() {
+        Random random = new Random(43);
+        List<TestPoint> points = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            points.add(new TestPoint(random.nextDouble() * 180.0 - 90.0, random.nextDouble() * 360.0 - 180.0));
+        }
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points);
+
+        assertQueriesMatchBruteForce(random, mortonIndex, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceWithCoordinateArrays() {
+        Random random = new Random(44);
+        List<TestPoint> points = createGridPoints(random, 20000);
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            latitudes[i] = points.get(i).latitude;
+            longitudes[i] = points.get(i).longitude;
+        }
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points, latitudes, longitudes);
+
+        assertQueriesMatchBruteForce(random, mortonIndex, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceAfterChanges() {
+        Random random = new Random(45);
+        List<TestPoint> points = createGridPoints(random, 5000);
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points);
+        mortonIndex.queryRange(90.0, -180.0, -90.0, 180.0);
+
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = points.remove(random.nextInt(points.size()));
+            assertTrue(mortonIndex.remove(point));
+        }
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = points.get(random.nextInt(points.size()));
+            double previousLatitude = point.latitude;
+            double previousLongitude = point.longitude;
+            point.latitude = getGridLatitude(random);
+            point.longitude = getGridLongitude(random);
+            mortonIndex.relocate(point, previousLatitude, previousLongitude);
+        }
+        for (int i = 0; i < 500; i++) {
+            TestPoint point = new TestPoint(getGridLatitude(random), getGridLongitude(random));
+            points.add(point);
+            mortonIndex.insert(point);
+        }
+
+        assertQueriesMatchBruteForce(random, mortonIndex, points);
+    }
+
+    @Test
+    public void queryRangeReturnsDuplicates() {
+        List<TestPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new TestPoint(52.0, 4.0));
+        }
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points);
+
+        assertEquals(1000, mortonIndex.queryRange(52.0, 4.0, 52.0, 4.0).size());
+        assertEquals(0, mortonIndex.queryRange(51.9, 4.0, 51.0, 4.0).size());
+    }
+
+    @Test
+    public void aggregateRangeMatchesBruteForce() {
+        Random random = new Random(46);
+        List<TestPoint> points = createGridPoints(random, 10000);
+        for (int i = 0; i < 10000; i++) {
+            points.add(new TestPoint(random.nextGaussian() * 10.0, random.nextGaussian() * 20.0));
+        }
+
+        MortonIndex<TestPoint> mortonIndex = new MortonIndex<>(LEAF_SIZE);
+        mortonIndex.insertAll(points);
+
+        assertAggregatesMatchBruteForce(random, mortonIndex, points);
+    }
+}
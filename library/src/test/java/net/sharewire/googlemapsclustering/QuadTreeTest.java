@@ -0,0 +1,124 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.assertAggregatesMatchBruteForce;
+import static net.sharewire.googlemapsclustering.SpatialIndexAssert.assertQueriesMatchBruteForce;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuadTreeTest {
+
+    private static final int BUCKET_SIZE = ClusterEngine.QUAD_TREE_BUCKET_CAPACITY;
+
+    @Test
+    public void queryRangeMatchesBruteForceAfterRemovals() {
+        Random random = new Random(42);
+        List<TestPoint> points = createRandomPoints(random, 20000);
+
+        QuadTree<TestPoint> quadTree = new QuadTree<>(BUCKET_SIZE);
+        quadTree.insertAll(points);
+
+        for (int i = 0; i < 10000; i++) {
+            TestPoint point = points.remove(random.nextInt(points.size()));
+            assertTrue(quadTree.remove(point));
+        }
+
+        assertQueriesMatchBruteForce(random, quadTree, points);
+        assertAggregatesMatchBruteForce(random, quadTree, points);
+    }
+
+    @Test
+    public void queryRangeMatchesBruteForceAfterRelocations() {
+        Random random = new Random(43);
+        List<TestPoint> points = createRandomPoints(random, 10000);
+
+        QuadTree<TestPoint> quadTree = new QuadTree<>(BUCKET_SIZE);
+        quadTree.insertAll(points);
+
+        for (int i = 0; i < 5000; i++) {
+            TestPoint point = points.get(random.nextInt(points.size()));
+            double previousLatitude = point.latitude;
+            double previousLongitude = point.longitude;
+            if (random.nextBoolean()) {
+                // Small moves usually keep the point inside its quad.
+                point.latitude = Math.max(-90.0, Math.min(90.0, point.latitude + random.nextGaussian() * 0.01));
+                point.longitude = Math.max(-180.0, Math.min(180.0, point.longitude + random.nextGaussian() * 0.01));
+            } else {
+                point.latitude = random.nextDouble() * 180.0 - 90.0;
+                point.longitude = random.nextDouble() * 360.0 - 180.0;
+            }
+            quadTree.relocate(point, previousLatitude, previousLongitude);
+        }
+
+        assertQueriesMatchBruteForce(random, quadTree, points);
+        assertAggregatesMatchBruteForce(random, quadTree, points);
+    }
+
+    @Test
+    public void removingAllPointsMergesTheTree() {
+        Random random = new Random(44);
+        List<TestPoint> points = createRandomPoints(random, 5000);
+
+        QuadTree<TestPoint> quadTree = new QuadTree<>(BUCKET_SIZE);
+        quadTree.insertAll(points);
+
+        for (TestPoint point : points) {
+            assertTrue(quadTree.remove(point));
+        }
+
+        assertFalse(quadTree.remove(points.get(0)));
+        assertTrue(quadTree.queryRange(90.0, -180.0, -90.0, 180.0).isEmpty());
+
+        // The merged tree accepts new points as if it was empty.
+        List<TestPoint> newPoints = createRandomPoints(random, 1000);
+        quadTree.insertAll(newPoints);
+        assertQueriesMatchBruteForce(random, quadTree, newPoints);
+    }
+
+    @Test
+    public void parallelInsertionBuildsTheSameTree() {
+        Random random = new Random(45);
+        List<TestPoint> points = createRandomPoints(random, 50000);
+
+        QuadTree<TestPoint> parallelQuadTree = new QuadTree<>(BUCKET_SIZE);
+        parallelQuadTree.insertAll(points);
+
+        QuadTree<TestPoint> sequentialQuadTree = new QuadTree<>(BUCKET_SIZE);
+        for (TestPoint point : points) {
+            sequentialQuadTree.insert(point);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            double south = random.nextDouble() * 180.0 - 90.0;
+            double north = Math.min(90.0, south + random.nextDouble() * 40.0);
+            double west = random.nextDouble() * 360.0 - 180.0;
+            double east = Math.min(180.0, west + random.nextDouble() * 80.0);
+            assertEquals(sequentialQuadTree.queryRange(north, west, south, east),
+                    parallelQuadTree.queryRange(north, west, south, east));
+        }
+    }
+
+    /**
+     * Creates random points and a few points on the edges of the map and of the top-level quads.
+     * Unlike the k-d tree, the quad tree splits the quads until the points inside them differ,
+     * so the points aren't placed on a coarse grid to avoid many duplicates.
+     */
+    private static List<TestPoint> createRandomPoints(Random random, int count) {
+        List<TestPoint> points = new ArrayList<>(count);
+        for (double latitude : new double[]{-90.0, 0.0, 90.0}) {
+            for (double longitude : new double[]{-180.0, 0.0, 180.0}) {
+                points.add(new TestPoint(latitude, longitude));
+            }
+        }
+        while (points.size() < count) {
+            points.add(new TestPoint(random.nextDouble() * 180.0 - 90.0, random.nextDouble() * 360.0 - 180.0));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,146 @@
+package net.sharewire.googlemapsclustering;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Assertions shared by the tests of the implementations of {@link SpatialIndex}.
+ */
+final class SpatialIndexAssert {
+
+    private SpatialIndexAssert() {
+    }
+
+    /**
+     * Creates points with coordinates on a coarse grid, so that many points are duplicated
+     * and many lie exactly on the edges of the queried ranges, including the edges of the map.
+     */
+    static List<TestPoint> createGridPoints(Random random, int count) {
+        List<TestPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new TestPoint(getGridLatitude(random), getGridLongitude(random)));
+        }
+        return points;
+    }
+
+    static double getGridLatitude(Random random) {
+        return random.nextInt(181) - 90.0;
+    }
+
+    static double getGridLongitude(Random random) {
+        return random.nextInt(361) - 180.0;
+    }
+
+    static void assertQueriesMatchBruteForce(Random random, SpatialIndex<TestPoint> spatialIndex,
+                                             List<TestPoint> points) {
+        assertQueryMatchesBruteForce(spatialIndex, points, 90.0, -180.0, -90.0, 180.0);
+
+        for (int i = 0; i < 500; i++) {
+            double south = getGridLatitude(random);
+            double north = Math.min(90.0, south + random.nextInt(40));
+            double west = getGridLongitude(random);
+            double east = Math.min(180.0, west + random.nextInt(80));
+            assertQueryMatchesBruteForce(spatialIndex, points, north, west, south, east);
+        }
+    }
+
+    private static void assertQueryMatchesBruteForce(SpatialIndex<TestPoint> spatialIndex, List<TestPoint> points,
+                                                     double north, double west, double south, double east) {
+        Map<TestPoint, Integer> expected = new IdentityHashMap<>();
+        for (TestPoint point : points) {
+            if (point.latitude <= north && point.latitude >= south
+                    && point.longitude >= west && point.longitude <= east) {
+                expected.put(point, 1);
+            }
+        }
+
+        Map<TestPoint, Integer> actual = new IdentityHashMap<>();
+        for (TestPoint point : spatialIndex.queryRange(north, west, south, east)) {
+            Integer count = actual.get(point);
+            actual.put(point, count == null ? 1 : count + 1);
+        }
+
+        assertEquals("[" + north + ", " + west + ", " + south + ", " + east + "]", expected, actual);
+    }
+
+    /**
+     * Checks that aggregating the points within random ranges gives the same totals as adding
+     * up the points in the ranges one by one, whether or not the groups of points are accepted.
+     */
+    static void assertAggregatesMatchBruteForce(Random random, SpatialIndex<TestPoint> spatialIndex,
+                                                List<TestPoint> points) {
+        for (int i = 0; i < 500; i++) {
+            double south = getGridLatitude(random);
+            double north = Math.min(90.0, south + random.nextInt(40));
+            double west = getGridLongitude(random);
+            double east = Math.min(180.0, west + random.nextInt(80));
+
+            RangeAggregator expected = new RangeAggregator(north, west, south, east, false);
+            for (TestPoint point : points) {
+                if (point.latitude <= north && point.latitude >= south
+                        && point.longitude >= west && point.longitude <= east) {
+                    expected.addPoint(point, point.latitude, point.longitude);
+                }
+            }
+
+            for (boolean acceptGroups : new boolean[]{false, true}) {
+                RangeAggregator actual = new RangeAggregator(north, west, south, east, acceptGroups);
+                spatialIndex.aggregateRange(north, west, south, east, actual);
+
+                String message = "[" + north + ", " + west + ", " + south + ", " + east + "]";
+                assertEquals(message, expected.count, actual.count);
+                assertEquals(message, expected.latitudeSum, actual.latitudeSum, 1e-6 * Math.max(1, expected.count));
+                assertEquals(message, expected.longitudeSum, actual.longitudeSum, 1e-6 * Math.max(1, expected.count));
+            }
+        }
+    }
+
+    /**
+     * Adds up the points of a range. Accepts the groups of points whose bounds are inside the range.
+     */
+    private static class RangeAggregator implements PointAggregator<TestPoint> {
+
+        private final double north;
+        private final double west;
+        private final double south;
+        private final double east;
+        private final boolean acceptGroups;
+        private int count;
+        private double latitudeSum;
+        private double longitudeSum;
+
+        private RangeAggregator(double north, double west, double south, double east, boolean acceptGroups) {
+            this.north = north;
+            this.west = west;
+            this.south = south;
+            this.east = east;
+            this.acceptGroups = acceptGroups;
+        }
+
+        @Override
+        public void addPoint(TestPoint point, double latitude, double longitude) {
+            assertEquals(point.latitude, latitude, 0.0);
+            assertEquals(point.longitude, longitude, 0.0);
+            count++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+        }
+
+        @Override
+        public boolean addPoints(double north, double west, double south, double east,
+                                 int count, double latitudeSum, double longitudeSum) {
+            if (!acceptGroups || north > this.north || west < this.west || south < this.south || east > this.east) {
+                return false;
+            }
+            this.count += count;
+            this.latitudeSum += latitudeSum;
+            this.longitudeSum += longitudeSum;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileGridTest {
+
+    // The latitude of the edges of the Web Mercator projection.
+    private static final double MAX_LATITUDE = 85.0511287798;
+
+    private static final float[] ZOOM_LEVELS = {0.0F, 3.0F, 10.0F, 16.0F};
+
+    private static final double[] LATITUDES = {-90.0, -89.0, -MAX_LATITUDE, -85.0, -84.9, -60.0,
+            -0.001, 0.0, 0.001, 30.0, 52.37, 84.9, 85.0, MAX_LATITUDE, 89.0, 90.0};
+
+    @Test
+    public void tilesContainTheirLatitudes() {
+        for (float zoomLevel : ZOOM_LEVELS) {
+            TileGrid tileGrid = new TileGrid(zoomLevel);
+            for (double latitude : LATITUDES) {
+                long tileY = tileGrid.getTileY(latitude);
+                String message = "zoom level " + zoomLevel + ", latitude " + latitude + ", tile " + tileY;
+
+                assertTrue(message, tileY >= 0 && tileY < tileGrid.getTileCount());
+                assertTrue(message, latitude <= tileGrid.getNorth(tileY) + 1e-9);
+                assertTrue(message, latitude >= tileGrid.getSouth(tileY) - 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void edgeRowsHoldLatitudesBeyondProjection() {
+        for (float zoomLevel : ZOOM_LEVELS) {
+            TileGrid tileGrid = new TileGrid(zoomLevel);
+            long lastRow = tileGrid.getTileCount() - 1;
+
+            assertEquals(0, tileGrid.getTileY(90.0));
+            assertEquals(0, tileGrid.getTileY(86.0));
+            assertEquals(lastRow, tileGrid.getTileY(-86.0));
+            assertEquals(lastRow, tileGrid.getTileY(-90.0));
+            assertEquals(90.0, tileGrid.getNorth(0), 0.0);
+            assertEquals(-90.0, tileGrid.getSouth(lastRow), 0.0);
+        }
+    }
+
+    @Test
+    public void tileBoundariesRoundTrip() {
+        for (float zoomLevel : new float[]{0.0F, 3.0F, 10.0F}) {
+            TileGrid tileGrid = new TileGrid(zoomLevel);
+            long tileCount = tileGrid.getTileCount();
+
+            for (long tileY = 0; tileY < tileCount; tileY++) {
+                String message = "zoom level " + zoomLevel + ", tile " + tileY;
+                double north = tileGrid.getNorth(tileY);
+                double south = tileGrid.getSouth(tileY);
+                double center = tileGrid.offsetLatitude(north, 0.5);
+
+                assertTrue(message, north > center && center > south);
+                assertEquals(message, tileY, tileGrid.getTileY(center));
+                if (tileY > 0) {
+                    assertEquals(message, tileGrid.getSouth(tileY - 1), north, 0.0);
+                    assertEquals(message, tileY, tileGrid.getTileY(north - 1e-9));
+                }
+                if (tileY < tileCount - 1) {
+                    assertEquals(message, tileY + 1, tileGrid.getTileY(tileGrid.offsetLatitude(center, 1.0)));
+                }
+            }
+
+            for (long tileX = 0; tileX < tileCount; tileX++) {
+                double west = tileGrid.getWest(tileX);
+                assertEquals(tileX, tileGrid.getTileX((west + tileGrid.getEast(tileX)) / 2));
+                assertEquals(west + 360.0 / tileCount, tileGrid.getEast(tileX), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void zoomOffsetMakesTilesTwiceAsLargeAsClusterRadius() {
+        assertEquals(0.0F, TileGrid.getZoomOffset(64), 1e-6F);
+        assertEquals(1.0F, TileGrid.getZoomOffset(32), 1e-6F);
+        assertEquals(2.0F, TileGrid.getZoomOffset(16), 1e-6F);
+        assertEquals(-1.0F, TileGrid.getZoomOffset(128), 1e-6F);
+        assertEquals(-0.5F, TileGrid.getZoomOffset(91), 1e-2F);
+    }
+}
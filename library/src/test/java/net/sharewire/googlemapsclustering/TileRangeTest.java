@@ -0,0 +1,74 @@
+package net.sharewire.googlemapsclustering;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TileRangeTest {
+
+    @Test
+    public void subtractCoversTheRemainingTilesExactlyOnce() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            TileRange range = createRandomRange(random);
+            TileRange subtractedRange = createRandomRange(random);
+            List<TileRange> remainingRanges = range.subtract(subtractedRange);
+
+            assertTrue(remainingRanges.size() <= 4);
+
+            for (long tileX = -1; tileX <= 12; tileX++) {
+                for (long tileY = -1; tileY <= 12; tileY++) {
+                    int coverCount = 0;
+                    for (TileRange remainingRange : remainingRanges) {
+                        if (remainingRange.contains(tileX, tileY)) {
+                            coverCount++;
+                        }
+                    }
+
+                    boolean remaining = range.contains(tileX, tileY) && !subtractedRange.contains(tileX, tileY);
+                    assertEquals(remaining ? 1 : 0, coverCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void subtractReturnsTheRangeItselfIfTheRangesDoNotIntersect() {
+        TileRange range = new TileRange(0, 0, 3, 3);
+        List<TileRange> remainingRanges = range.subtract(new TileRange(4, 0, 5, 3));
+
+        assertEquals(1, remainingRanges.size());
+        assertSame(range, remainingRanges.get(0));
+    }
+
+    @Test
+    public void subtractReturnsNothingIfTheRangeIsCovered() {
+        TileRange range = new TileRange(2, 2, 3, 3);
+
+        assertTrue(range.subtract(new TileRange(2, 2, 3, 3)).isEmpty());
+        assertTrue(range.subtract(new TileRange(0, 0, 5, 5)).isEmpty());
+    }
+
+    @Test
+    public void intersectsSharedEdgeTiles() {
+        TileRange range = new TileRange(0, 0, 3, 3);
+
+        assertTrue(range.intersects(new TileRange(3, 3, 5, 5)));
+        assertFalse(range.intersects(new TileRange(4, 0, 5, 3)));
+        assertFalse(range.intersects(new TileRange(0, 4, 3, 5)));
+    }
+
+    private static TileRange createRandomRange(Random random) {
+        long startX = random.nextInt(11);
+        long startY = random.nextInt(11);
+        return new TileRange(startX, startY, startX + random.nextInt(11 - (int) startX),
+                startY + random.nextInt(11 - (int) startY));
+    }
+}